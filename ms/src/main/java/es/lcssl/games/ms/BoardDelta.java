@@ -0,0 +1,485 @@
+/*
+ * Copyright (c) 2023, lcu
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package es.lcssl.games.ms;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * What changed on a {@link MineSweeper} board with a click, or a batch of
+ * {@link MineSweeper#apply(int[], byte[]) moves}: the cells uncovered
+ * (with their mine counts), the cells flagged and unflagged, the cell
+ * that exploded (if any) and the counters after it. The cells, numbered
+ * {@code row * cols + col}, are kept as runs of consecutive cells, as
+ * the cells uncovered by a cascade come in rows, so the size of a delta
+ * grows with the region uncovered and not with the board. Observers
+ * follow a game applying the deltas, in order, to the board as they saw
+ * it; a delta with a new {@link #getGame() game} number starts a new
+ * game. The mines shown when a game is lost are not in its delta, only
+ * the cell that exploded; observers wanting them ask for the whole board
+ * (with the {@code STATE} request of the {@link GameServer}).
+ *
+ * <p>
+ * A delta can be written as text, for the line based protocol of the
+ * {@link GameServer}, or in binary, for storage, with variable length
+ * integers and the mine counts packed two per byte.
+ *
+ * <p>
+ * This class is immutable, so thread safe.
+ *
+ * @author lcu
+ */
+public final class BoardDelta {
+
+    private static final int[] NO_RUNS = {};
+
+    private final int game;
+    private final int cellsToGo, minesToMark;
+    private final boolean lost, won;
+
+    /**
+     * The runs of cells uncovered, as pairs of first cell and length, in
+     * increasing order, and the mines around each cell of the runs.
+     */
+    private final int[] runs;
+    private final byte[] mines;
+
+    /**
+     * The runs of cells flagged and unflagged, as {@link #runs}.
+     */
+    private final int[] flagged, unflagged;
+
+    /**
+     * The cell that exploded, {@code -1} if none.
+     */
+    private final int exploded;
+
+    /**
+     * Receives the cells of a delta.
+     */
+    @FunctionalInterface
+    public interface Sink {
+
+        void cell( int cell, int mines );
+    }
+
+    /**
+     * Receives the flags of a delta.
+     */
+    @FunctionalInterface
+    public interface FlagSink {
+
+        void cell( int cell, boolean flagged );
+    }
+
+    private BoardDelta( int game, int[] runs, byte[] mines, int[] flagged,
+            int[] unflagged, int exploded, int cells_to_go,
+            int mines_to_mark, boolean lost, boolean won ) {
+        this.game = game;
+        this.runs = runs;
+        this.mines = mines;
+        this.flagged = flagged;
+        this.unflagged = unflagged;
+        this.exploded = exploded;
+        cellsToGo = cells_to_go;
+        minesToMark = mines_to_mark;
+        this.lost = lost;
+        this.won = won;
+    }
+
+    /**
+     * Builds the delta of the cells uncovered and flagged.
+     *
+     * @param opened       the cells uncovered, in any order; only the
+     *                     ones from {@code from} to {@code to} are used,
+     *                     and not changed.
+     * @param toggled      the cells flagged or unflagged, in any order
+     *                     and maybe repeated; only the ones from
+     *                     {@code from_toggled} to {@code to_toggled} are
+     *                     used, and not changed.
+     * @param mines_around the mines around a cell, {@code -1} if it is
+     *                     covered.
+     * @param is_flagged   whether a cell is flagged now.
+     * @param exploded     the cell that exploded, {@code -1} if none.
+     */
+    static BoardDelta of( int game, int[] opened, int from, int to,
+            int[] toggled, int from_toggled, int to_toggled,
+            IntUnaryOperator mines_around, IntPredicate is_flagged,
+            int exploded, int cells_to_go, int mines_to_mark,
+            boolean lost, boolean won ) {
+
+        int[] sorted = Arrays.copyOfRange( opened, from, to );
+        Arrays.sort( sorted );
+        byte[] mines = new byte[sorted.length];
+        for ( int i = 0; i < sorted.length; i++ ) {
+            mines[i] = (byte) mines_around.applyAsInt( sorted[i] );
+        }
+        int[] runs = runsOf( sorted, sorted.length );
+
+        /* the cells toggled an even number of times are told anyway, the
+         * state told is the one they have now */
+        int[] flags = NO_RUNS,
+                unflags = NO_RUNS;
+        if ( to_toggled > from_toggled ) {
+            sorted = Arrays.copyOfRange( toggled, from_toggled, to_toggled );
+            Arrays.sort( sorted );
+            int[] off = new int[sorted.length];
+            int n_on = 0,
+                    n_off = 0;
+            for ( int i = 0; i < sorted.length; i++ ) {
+                int cell = sorted[i];
+                if ( i > 0 && sorted[i - 1] == cell ) {
+                    continue;
+                }
+                if ( is_flagged.test( cell ) ) {
+                    sorted[n_on++] = cell;
+                } else if ( mines_around.applyAsInt( cell ) < 0 ) {
+                    /* unflagged and uncovered later is only uncovered */
+                    off[n_off++] = cell;
+                }
+            }
+            flags = runsOf( sorted, n_on );
+            unflags = runsOf( off, n_off );
+        }
+        return new BoardDelta( game, runs, mines, flags, unflags,
+                               lost ? exploded : -1,
+                               cells_to_go, mines_to_mark, lost, won );
+    }
+
+    /**
+     * @param sorted the cells, in increasing order, without repetitions.
+     * @return the runs of the first {@code count} cells of {@code sorted},
+     *         as pairs of first cell and length.
+     */
+    private static int[] runsOf( int[] sorted, int count ) {
+        if ( count == 0 ) {
+            return NO_RUNS;
+        }
+        int[] runs = new int[8];
+        int n = 0;
+        for ( int i = 0; i < count; i++ ) {
+            int cell = sorted[i];
+            if ( n > 0 && runs[n - 2] + runs[n - 1] == cell ) {
+                runs[n - 1]++;
+                continue;
+            }
+            if ( n == runs.length ) {
+                runs = Arrays.copyOf( runs, 2 * n );
+            }
+            runs[n++] = cell;
+            runs[n++] = 1;
+        }
+        return Arrays.copyOf( runs, n );
+    }
+
+    /**
+     * @return the number of games started on the board before this one.
+     */
+    public int getGame() {
+        return game;
+    }
+
+    public int getCellsToGo() {
+        return cellsToGo;
+    }
+
+    public int getMinesToMark() {
+        return minesToMark;
+    }
+
+    public boolean isLost() {
+        return lost;
+    }
+
+    public boolean isWon() {
+        return won;
+    }
+
+    /**
+     * @return the cell that exploded, if the game was lost, or {@code -1}.
+     */
+    public int getExploded() {
+        return exploded;
+    }
+
+    /**
+     * @return the number of cells uncovered.
+     */
+    public int size() {
+        return mines.length;
+    }
+
+    /**
+     * @return the number of runs of consecutive cells.
+     */
+    public int getRuns() {
+        return runs.length / 2;
+    }
+
+    public int getRunStart( int run ) {
+        return runs[2 * run];
+    }
+
+    public int getRunLength( int run ) {
+        return runs[2 * run + 1];
+    }
+
+    /**
+     * Gives each cell uncovered, in increasing order, with the mines
+     * around it.
+     */
+    public void forEach( Sink sink ) {
+        int i = 0;
+        for ( int k = 0; k < runs.length; k += 2 ) {
+            for ( int cell = runs[k], end = cell + runs[k + 1];
+                    cell < end; cell++ ) {
+                sink.cell( cell, mines[i++] );
+            }
+        }
+    }
+
+    /**
+     * Gives each cell flagged, and then each cell unflagged, in
+     * increasing order.
+     */
+    public void forEachFlag( FlagSink sink ) {
+        forEachFlag( flagged, true, sink );
+        forEachFlag( unflagged, false, sink );
+    }
+
+    private static void forEachFlag( int[] runs, boolean flag,
+            FlagSink sink ) {
+        for ( int k = 0; k < runs.length; k += 2 ) {
+            for ( int cell = runs[k], end = cell + runs[k + 1];
+                    cell < end; cell++ ) {
+                sink.cell( cell, flag );
+            }
+        }
+    }
+
+    /**
+     * @return the delta as text: the game, the status ({@code PLAYING},
+     *         {@code WON} or {@code LOST}), the cells to go, the mines to
+     *         mark, the number of runs uncovered and the runs, each one as
+     *         {@code first+length:mines}, with a digit for the mines
+     *         around each cell of the run, then the number of runs
+     *         flagged and the runs, and the number of runs unflagged and
+     *         the runs, each one as {@code first+length}, and last the
+     *         cell that exploded, or {@code -1}.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(
+                40 + 8 * (runs.length + flagged.length + unflagged.length)
+                + mines.length );
+        sb.append( game )
+                .append( won ? " WON " : lost ? " LOST " : " PLAYING " )
+                .append( cellsToGo ).append( ' ' )
+                .append( minesToMark ).append( ' ' )
+                .append( runs.length / 2 );
+        int i = 0;
+        for ( int k = 0; k < runs.length; k += 2 ) {
+            sb.append( ' ' ).append( runs[k] )
+                    .append( '+' ).append( runs[k + 1] ).append( ':' );
+            for ( int end = i + runs[k + 1]; i < end; i++ ) {
+                sb.append( (char) ('0' + mines[i]) );
+            }
+        }
+        append( sb, flagged );
+        append( sb, unflagged );
+        return sb.append( ' ' ).append( exploded ).toString();
+    }
+
+    private static void append( StringBuilder sb, int[] runs ) {
+        sb.append( ' ' ).append( runs.length / 2 );
+        for ( int k = 0; k < runs.length; k += 2 ) {
+            sb.append( ' ' ).append( runs[k] )
+                    .append( '+' ).append( runs[k + 1] );
+        }
+    }
+
+    /**
+     * Reads a delta written by {@link #toString()}.
+     *
+     * @throws IllegalArgumentException if {@code text} is not a delta.
+     */
+    public static BoardDelta parse( String text ) {
+
+        String[] fields = text.split( " " );
+        if ( fields.length < 8 ) {
+            throw new IllegalArgumentException( text );
+        }
+        int n = Integer.parseInt( fields[4] );
+        if ( n < 0 || fields.length < 8 + n ) {
+            throw new IllegalArgumentException( text );
+        }
+        int[] runs = new int[2 * n];
+        StringBuilder digits = new StringBuilder();
+        for ( int k = 0; k < n; k++ ) {
+            String run = fields[5 + k];
+            int colon = run.indexOf( ':' );
+            if ( colon < 0 ) {
+                throw new IllegalArgumentException( run );
+            }
+            parseRun( run.substring( 0, colon ), runs, 2 * k );
+            if ( run.length() - colon - 1 != runs[2 * k + 1] ) {
+                throw new IllegalArgumentException( run );
+            }
+            digits.append( run, colon + 1, run.length() );
+        }
+        byte[] mines = new byte[digits.length()];
+        for ( int i = 0; i < mines.length; i++ ) {
+            mines[i] = (byte) Character.digit( digits.charAt( i ), 10 );
+            if ( mines[i] < 0 ) {
+                throw new IllegalArgumentException( text );
+            }
+        }
+        int next = 5 + n;
+        int[] flagged = parseRuns( fields, next );
+        next += 1 + flagged.length / 2;
+        if ( next >= fields.length ) {
+            throw new IllegalArgumentException( text );
+        }
+        int[] unflagged = parseRuns( fields, next );
+        next += 1 + unflagged.length / 2;
+        if ( next != fields.length - 1 ) {
+            throw new IllegalArgumentException( text );
+        }
+        return new BoardDelta( Integer.parseInt( fields[0] ), runs, mines,
+                               flagged, unflagged,
+                               Integer.parseInt( fields[next] ),
+                               Integer.parseInt( fields[2] ),
+                               Integer.parseInt( fields[3] ),
+                               fields[1].equals( "LOST" ),
+                               fields[1].equals( "WON" ) );
+    }
+
+    /**
+     * Parses the number of runs at {@code fields[at]} and the runs after
+     * it.
+     */
+    private static int[] parseRuns( String[] fields, int at ) {
+        int n = Integer.parseInt( fields[at] );
+        if ( n < 0 || at + n >= fields.length ) {
+            throw new IllegalArgumentException( fields[at] );
+        }
+        int[] runs = new int[2 * n];
+        for ( int k = 0; k < n; k++ ) {
+            parseRun( fields[at + 1 + k], runs, 2 * k );
+        }
+        return runs;
+    }
+
+    /**
+     * Parses {@code first+length} into {@code runs[at]} and
+     * {@code runs[at + 1]}.
+     */
+    private static void parseRun( String run, int[] runs, int at ) {
+        int plus = run.indexOf( '+' );
+        if ( plus < 0 ) {
+            throw new IllegalArgumentException( run );
+        }
+        runs[at] = Integer.parseInt( run.substring( 0, plus ) );
+        runs[at + 1] = Integer.parseInt( run.substring( plus + 1 ) );
+    }
+
+    /**
+     * Writes the delta in binary: the game, the status, the counters, the
+     * runs uncovered (each one as the gap since the end of the previous
+     * one and its length), the mine counts, two per byte, the runs flagged
+     * and unflagged (as the ones uncovered), and the cell that exploded
+     * plus one.
+     */
+    public void write( DataOutput out ) throws IOException {
+        ScoreSegment.writeVarLong( out, game );
+        out.writeByte( (lost ? 1 : 0) | (won ? 2 : 0) );
+        ScoreSegment.writeVarLong( out, cellsToGo );
+        ScoreSegment.writeVarLong( out, minesToMark );
+        write( out, runs );
+        for ( int i = 0; i < mines.length; i += 2 ) {
+            out.writeByte( mines[i]
+                    | (i + 1 < mines.length ? mines[i + 1] << 4 : 0) );
+        }
+        write( out, flagged );
+        write( out, unflagged );
+        ScoreSegment.writeVarLong( out, exploded + 1 );
+    }
+
+    private static void write( DataOutput out, int[] runs )
+            throws IOException {
+        ScoreSegment.writeVarLong( out, runs.length / 2 );
+        int end = 0;
+        for ( int k = 0; k < runs.length; k += 2 ) {
+            ScoreSegment.writeVarLong( out, runs[k] - end );
+            ScoreSegment.writeVarLong( out, runs[k + 1] );
+            end = runs[k] + runs[k + 1];
+        }
+    }
+
+    /**
+     * Reads a delta written by {@link #write(DataOutput)}.
+     */
+    public static BoardDelta read( DataInput in ) throws IOException {
+        int game = (int) ScoreSegment.readVarLong( in ),
+                status = in.readUnsignedByte(),
+                cells_to_go = (int) ScoreSegment.readVarLong( in ),
+                mines_to_mark = (int) ScoreSegment.readVarLong( in ),
+                runs[] = readRuns( in ),
+                count = 0;
+        for ( int k = 1; k < runs.length; k += 2 ) {
+            count += runs[k];
+        }
+        byte[] mines = new byte[count];
+        for ( int i = 0; i < count; i += 2 ) {
+            int b = in.readUnsignedByte();
+            mines[i] = (byte) (b & 0x0f);
+            if ( i + 1 < count ) {
+                mines[i + 1] = (byte) (b >>> 4);
+            }
+        }
+        int[] flagged = readRuns( in ),
+                unflagged = readRuns( in );
+        int exploded = (int) ScoreSegment.readVarLong( in ) - 1;
+        return new BoardDelta( game, runs, mines, flagged, unflagged,
+                               exploded, cells_to_go, mines_to_mark,
+                               (status & 1) != 0, (status & 2) != 0 );
+    }
+
+    private static int[] readRuns( DataInput in ) throws IOException {
+        int[] runs = new int[2 * (int) ScoreSegment.readVarLong( in )];
+        int end = 0;
+        for ( int k = 0; k < runs.length; k += 2 ) {
+            runs[k] = end + (int) ScoreSegment.readVarLong( in );
+            runs[k + 1] = (int) ScoreSegment.readVarLong( in );
+            end = runs[k] + runs[k + 1];
+        }
+        return runs;
+    }
+}
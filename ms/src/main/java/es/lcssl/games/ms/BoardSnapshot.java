@@ -0,0 +1,406 @@
+/*
+ * Copyright (c) 2023, lcu
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package es.lcssl.games.ms;
+
+import java.util.BitSet;
+import java.util.function.IntConsumer;
+
+/**
+ * An immutable copy of the state of a {@link MineSweeper} board, as the
+ * player sees it: which cells are uncovered (and their mine counts) or
+ * flagged, the counters and whether the game is finished. It does not
+ * tell where the mines are. Snapshots are taken with
+ * {@link MineSweeper#snapshot()}, from any thread, so solvers and
+ * observers can study the board while the game goes on.
+ *
+ * <p>
+ * Snapshots are persistent: {@link #withFlagged(int, int, boolean)} and
+ * {@link #withOpened(int, int, int)} make a new snapshot with one more
+ * (hypothetical) move, for solvers to look ahead. The cells are kept in
+ * a two level tree of chunks of {@link #LEAF} cells, shared by all the
+ * snapshots that did not change them, so a move copies one chunk and
+ * two small tables instead of the whole board. The board also builds
+ * its snapshots from the previous one, copying only the chunks changed.
+ *
+ * <p>
+ * This class is thread safe.
+ *
+ * @author lcu
+ */
+public final class BoardSnapshot {
+
+    /**
+     * The maximum number of neighbours of a cell, in any
+     * {@link Topology}.
+     */
+    public static final int MAX_NEIGHBOURS = Topology.MAX_NEIGHBOURS;
+
+    /**
+     * Cells in a chunk, and chunks in a branch of the tree.
+     */
+    static final int LEAF_BITS = 6, LEAF = 1 << LEAF_BITS,
+            BRANCH_BITS = 6, BRANCH = 1 << BRANCH_BITS;
+
+    private final long version;
+    private final int game, depth;
+    private final int rows, cols, width;
+    private final Topology topology;
+
+    /**
+     * The cells of the board with their border, indexed as in the
+     * board: cell {@code i} is {@code cells[i >>> (LEAF_BITS +
+     * BRANCH_BITS)][(i >>> LEAF_BITS) & (BRANCH - 1)][i & (LEAF - 1)]}.
+     * Never changed once the snapshot is built.
+     */
+    private final byte[][][] cells;
+    private final int[] start, adjacent;
+    private final int cellsToGo, minesToMark;
+    private final boolean lost, won;
+
+    private BoardSnapshot( long version, int game, int depth, int rows,
+            int cols,
+            Topology topology, byte[][][] cells, int[] start,
+            int[] adjacent, int cells_to_go, int mines_to_mark,
+            boolean lost, boolean won ) {
+        this.version = version;
+        this.game = game;
+        this.depth = depth;
+        this.rows = rows;
+        this.cols = cols;
+        this.width = cols + 2;
+        this.topology = topology;
+        this.cells = cells;
+        this.start = start;
+        this.adjacent = adjacent;
+        this.cellsToGo = cells_to_go;
+        this.minesToMark = mines_to_mark;
+        this.lost = lost;
+        this.won = won;
+    }
+
+    /**
+     * Takes a snapshot of a board, copying all its cells.
+     *
+     * @param cells    the cells of the board with their border.
+     * @param start    the adjacency of the board, in compressed sparse
+     *                 row form, which is never changed.
+     * @param adjacent see {@code start}.
+     */
+    static BoardSnapshot of( long version, int game, int rows, int cols,
+            Topology topology, byte[] cells, int[] start, int[] adjacent,
+            int cells_to_go, int mines_to_mark, boolean lost,
+            boolean won ) {
+        int leaves = (cells.length + LEAF - 1) >>> LEAF_BITS;
+        byte[][][] tree = new byte[ (leaves + BRANCH - 1) >>> BRANCH_BITS ]
+                [ BRANCH ][];
+        for ( int l = 0; l < leaves; l++ ) {
+            tree[ l >>> BRANCH_BITS ][ l & (BRANCH - 1) ] = leaf( cells, l );
+        }
+        return new BoardSnapshot( version, game, 0, rows, cols, topology,
+                                  tree, start, adjacent, cells_to_go,
+                                  mines_to_mark, lost, won );
+    }
+
+    /**
+     * Takes a snapshot of the same board, sharing the chunks of this one
+     * not changed since.
+     *
+     * @param cells   the cells of the board with their border.
+     * @param changed the chunks of {@code cells} changed since this
+     *                snapshot was taken.
+     */
+    BoardSnapshot updated( long version, int game, byte[] cells,
+            BitSet changed, int cells_to_go, int mines_to_mark,
+            boolean lost, boolean won ) {
+        byte[][][] tree = this.cells.clone();
+        int copied = -1;
+        for ( int l = changed.nextSetBit( 0 ); l >= 0;
+                l = changed.nextSetBit( l + 1 ) ) {
+            int b = l >>> BRANCH_BITS;
+            if ( b != copied ) {
+                /* changed are in order, each branch is copied once */
+                tree[ b ] = tree[ b ].clone();
+                copied = b;
+            }
+            tree[ b ][ l & (BRANCH - 1) ] = leaf( cells, l );
+        }
+        return new BoardSnapshot( version, game, 0, rows, cols, topology,
+                                  tree, start, adjacent, cells_to_go,
+                                  mines_to_mark, lost, won );
+    }
+
+    /**
+     * Copies chunk {@code l} of the board cells, with what the player
+     * sees of them: the mine counts of the cells uncovered (and the
+     * border), and whether the covered ones are flagged.
+     */
+    private static byte[] leaf( byte[] cells, int l ) {
+        int from = l << LEAF_BITS;
+        byte[] res = new byte[ LEAF ];
+        for ( int k = 0, n = Math.min( LEAF, cells.length - from ); k < n;
+                k++ ) {
+            byte cell = cells[ from + k ];
+            res[ k ] = (byte) ((cell & MineSweeper.ALREADY_OPENED) != 0
+                    ? cell & (MineSweeper.ALREADY_OPENED
+                              | MineSweeper.MINES_MASK)
+                    : cell & MineSweeper.MARK_MASK);
+        }
+        return res;
+    }
+
+    private byte get( int i ) {
+        return cells[ i >>> (LEAF_BITS + BRANCH_BITS) ]
+                [ (i >>> LEAF_BITS) & (BRANCH - 1) ][ i & (LEAF - 1) ];
+    }
+
+    /**
+     * @return a snapshot like this one but for cell {@code i}, copying
+     *         only its chunk and the tables above it.
+     */
+    private BoardSnapshot with( int i, byte value, int cells_to_go,
+            int mines_to_mark ) {
+        int b = i >>> (LEAF_BITS + BRANCH_BITS),
+                l = (i >>> LEAF_BITS) & (BRANCH - 1);
+        byte[][][] tree = cells.clone();
+        tree[ b ] = tree[ b ].clone();
+        tree[ b ][ l ] = tree[ b ][ l ].clone();
+        tree[ b ][ l ][ i & (LEAF - 1) ] = value;
+        return new BoardSnapshot( version, game, depth + 1, rows, cols,
+                                  topology, tree, start, adjacent,
+                                  cells_to_go, mines_to_mark, lost, won );
+    }
+
+    /**
+     * Flags or unflags a covered cell, on a new snapshot.
+     *
+     * @return the new snapshot.
+     * @throws IllegalStateException if the cell is uncovered.
+     */
+    public BoardSnapshot withFlagged( int r, int c, boolean flagged ) {
+        int i = index( r, c );
+        byte cell = get( i );
+        if ( (cell & MineSweeper.ALREADY_OPENED) != 0 ) {
+            throw new IllegalStateException( "(" + r + ", " + c + ")" );
+        }
+        if ( ((cell & MineSweeper.MARK_MASK) != 0) == flagged ) {
+            return this;
+        }
+        return with( i, (byte) (cell ^ MineSweeper.MARK_MASK), cellsToGo,
+                     minesToMark + (flagged ? -1 : 1) );
+    }
+
+    /**
+     * Uncovers a covered cell, supposing it has {@code mines} mines
+     * around, on a new snapshot.
+     *
+     * @return the new snapshot.
+     * @throws IllegalStateException if the cell is uncovered or flagged.
+     */
+    public BoardSnapshot withOpened( int r, int c, int mines ) {
+        int i = index( r, c );
+        byte cell = get( i );
+        if ( (cell & (MineSweeper.ALREADY_OPENED | MineSweeper.MARK_MASK))
+                != 0 ) {
+            throw new IllegalStateException( "(" + r + ", " + c + ")" );
+        }
+        return with( i, (byte) (MineSweeper.ALREADY_OPENED
+                                | (mines & MineSweeper.MINES_MASK)),
+                     cellsToGo - 1, minesToMark );
+    }
+
+    /**
+     * Reports the cells that differ between this snapshot and an older
+     * one of the same board, comparing only the chunks not shared.
+     *
+     * @param older the older snapshot.
+     * @param out   receives the index of each cell changed.
+     */
+    void changedCells( BoardSnapshot older, IntConsumer out ) {
+        for ( int b = 0; b < cells.length; b++ ) {
+            byte[][] branch = cells[ b ], old_branch = older.cells[ b ];
+            for ( int l = 0; branch != old_branch && l < BRANCH; l++ ) {
+                byte[] leaf = branch[ l ], old_leaf = old_branch[ l ];
+                for ( int k = 0; leaf != old_leaf && k < LEAF; k++ ) {
+                    if ( leaf[ k ] != old_leaf[ k ] ) {
+                        out.accept( ((b << BRANCH_BITS | l) << LEAF_BITS)
+                                    | k );
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of cells of the board, border included: cells
+     *         are numbered from {@code 0} to this, excluded.
+     */
+    int size() {
+        return (rows + 2) * width;
+    }
+
+    /**
+     * @return the index of cell {@code (r, c)}.
+     */
+    int cellIndex( int r, int c ) {
+        return index( r, c );
+    }
+
+    int rowOf( int i ) {
+        return i / width - 1;
+    }
+
+    int colOf( int i ) {
+        return i % width - 1;
+    }
+
+    /**
+     * @return {@code true} if cell {@code i} is in the board, not in its
+     *         border.
+     */
+    boolean inBoard( int i ) {
+        int r = rowOf( i ), c = colOf( i );
+        return r >= 0 && r < rows && c >= 0 && c < cols;
+    }
+
+    /**
+     * @return the value of cell {@code i}, as in {@link MineSweeper}, but
+     *         only with the bits the player sees: never {@link
+     *         MineSweeper#MINE}, nor the mine count of a covered cell.
+     */
+    byte cellAt( int i ) {
+        return get( i );
+    }
+
+    /**
+     * Gets the neighbours of cell {@code i}, all of them in the board.
+     *
+     * @param out receives their indexes, at least {@link #MAX_NEIGHBOURS}
+     *            long.
+     * @return the number of neighbours.
+     */
+    int neighbours( int i, int[] out ) {
+        int n = 0;
+        for ( int k = start[ i ]; k < start[ i + 1 ]; k++ ) {
+            out[ n++ ] = adjacent[ k ];
+        }
+        return n;
+    }
+
+    /**
+     * @return the number of changes the board had when the snapshot was
+     *         taken: two snapshots of the same board with the same version
+     *         and {@link #getDepth() depth} 0 are equal.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the number of games started on the board before this one.
+     */
+    public int getGame() {
+        return game;
+    }
+
+    /**
+     * @return the number of hypothetical moves made since the snapshot
+     *         was taken from the board.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public Topology getTopology() {
+        return topology;
+    }
+
+    public int getCellsToGo() {
+        return cellsToGo;
+    }
+
+    public int getMinesToMark() {
+        return minesToMark;
+    }
+
+    public boolean isLost() {
+        return lost;
+    }
+
+    public boolean isWon() {
+        return won;
+    }
+
+    private int index( int r, int c ) {
+        if ( r < 0 || r >= rows || c < 0 || c >= cols ) {
+            throw new IndexOutOfBoundsException( "(" + r + ", " + c + ")" );
+        }
+        return (r + 1) * width + c + 1;
+    }
+
+    public boolean isOpened( int r, int c ) {
+        return (get( index( r, c ) ) & MineSweeper.ALREADY_OPENED) != 0;
+    }
+
+    public boolean isFlagged( int r, int c ) {
+        return (get( index( r, c ) ) & MineSweeper.MARK_MASK) != 0;
+    }
+
+    /**
+     * @return the number of mines around cell {@code (r, c)}, or
+     *         {@code -1} if it is not uncovered.
+     */
+    public int getMines( int r, int c ) {
+        byte cell = get( index( r, c ) );
+        return (cell & MineSweeper.ALREADY_OPENED) != 0
+                ? cell & MineSweeper.MINES_MASK
+                : -1;
+    }
+
+    /**
+     * Gets the neighbours of cell {@code (r, c)}.
+     *
+     * @param out_r receives the rows of the neighbours, at least
+     *              {@link #MAX_NEIGHBOURS} long.
+     * @param out_c receives their columns, as long.
+     * @return the number of neighbours.
+     */
+    public int neighbours( int r, int c, int[] out_r, int[] out_c ) {
+        int cell = index( r, c ), n = 0;
+        for ( int k = start[ cell ]; k < start[ cell + 1 ]; k++, n++ ) {
+            out_r[ n ] = adjacent[ k ] / width - 1;
+            out_c[ n ] = adjacent[ k ] % width - 1;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2023, lcu
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package es.lcssl.games.ms;
+
+import java.awt.Component;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Logger;
+import javax.imageio.ImageIO;
+import javax.swing.Icon;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Shared cache of the icons shown on the board cells. The images are
+ * decoded the first time any icon is requested, all of them in parallel,
+ * and each one is scaled only once for each cell size and screen scale
+ * factor, into an image compatible with the screen, so painting it is a
+ * plain copy. Only the icons of the last {@link #SIZES_KEPT} sizes are
+ * kept.
+ *
+ * <p>
+ * This class is thread safe.
+ *
+ * @author lcu
+ */
+final class CellIcons {
+
+    private static final Logger LOG
+            = Logger.getLogger( CellIcons.class.getName() );
+
+    private static final ResourceBundle INTL
+            = ResourceBundle.getBundle( CellIcons.class.getName() );
+
+    /**
+     * The icons, and the resources they are read from.
+     */
+    enum Kind {
+        FLAGGED( "flagged.png" ),
+        EXPLODED( "exploded.png" ),
+        MINE( "mine.png" ),
+        QUESTION( "question.png" );
+
+        final String resource;
+
+        Kind( String resource ) {
+            this.resource = resource;
+        }
+    }
+
+    /**
+     * The decoded images, started on first use.
+     */
+    private static final class Sources {
+
+        static final Map<Kind, CompletableFuture<BufferedImage>> IMAGES
+                = new EnumMap<>( Kind.class );
+
+        static {
+            for ( Kind kind : Kind.values() ) {
+                IMAGES.put( kind, CompletableFuture.supplyAsync(
+                        () -> decode( kind ) ) );
+            }
+        }
+    }
+
+    private static final class Key {
+
+        final Kind kind;
+        final int size;
+        final double scale;
+
+        Key( Kind kind, int size, double scale ) {
+            this.kind = kind;
+            this.size = size;
+            this.scale = scale;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash( kind, size, scale );
+        }
+
+        @Override
+        public boolean equals( Object obj ) {
+            if ( this == obj ) {
+                return true;
+            }
+            if ( obj == null || getClass() != obj.getClass() ) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return kind == other.kind
+                    && size == other.size
+                    && scale == other.scale;
+        }
+    }
+
+    /**
+     * Number of cell sizes (and screen scales) whose icons are kept: the
+     * current one and the previous, so resizing the board back and forth
+     * doesn't scale them again, and resizing it a lot doesn't keep them
+     * all.
+     */
+    static final int SIZES_KEPT = 2;
+
+    /**
+     * The scaled icons, least recently used first.
+     */
+    private static final Map<Key, Icon> ICONS = new LinkedHashMap<Key, Icon>(
+            16, 0.75f, true ) {
+        @Override
+        protected boolean removeEldestEntry( Map.Entry<Key, Icon> eldest ) {
+            return size() > SIZES_KEPT * Kind.values().length;
+        }
+    };
+
+    private CellIcons() {
+    }
+
+    private static BufferedImage decode( Kind kind ) {
+
+        try ( InputStream in = CellIcons.class.getClassLoader()
+                .getResourceAsStream( kind.resource ) ) {
+            if ( in == null ) {
+                throw new IOException( kind.resource );
+            }
+            return ImageIO.read( in );
+        } catch ( IOException | IllegalArgumentException ex ) {
+            LOG.severe( () -> format(
+                    INTL.getString( "CANNOT_LOAD_ICON" ),
+                    kind.resource,
+                    ex ) );
+            return null;
+        }
+    }
+
+    /**
+     * Starts decoding the images in background, if not yet done.
+     */
+    static void preload() {
+        Sources.IMAGES.size();
+    }
+
+    /**
+     * @return the scale factor of the screen where {@code c} is shown,
+     *         {@code 1.0} if it is not shown yet.
+     */
+    static double scaleOf( Component c ) {
+        GraphicsConfiguration gc = c.getGraphicsConfiguration();
+        return gc == null ? 1.0 : gc.getDefaultTransform().getScaleX();
+    }
+
+    /**
+     * @param kind  the icon.
+     * @param size  the width and height of the icon, in (unscaled) pixels.
+     * @param scale the scale factor of the screen.
+     * @param gc    the configuration of the screen (to create compatible
+     *              images), or {@code null} if not known.
+     * @return the icon, or {@code null} if its image couldn't be read.
+     */
+    static Icon get( Kind kind, int size, double scale,
+            GraphicsConfiguration gc ) {
+
+        Key key = new Key( kind, size, scale );
+        Icon icon;
+        synchronized ( ICONS ) {
+            icon = ICONS.get( key );
+        }
+        if ( icon == null ) {
+            BufferedImage source = Sources.IMAGES.get( kind ).join();
+            if ( source == null ) {
+                return null;
+            }
+            /* scale it without the lock, another thread may win */
+            Icon scaled = new ScaledIcon( source, size, scale, gc );
+            synchronized ( ICONS ) {
+                icon = ICONS.putIfAbsent( key, scaled );
+            }
+            if ( icon == null ) {
+                icon = scaled;
+            }
+        }
+        return icon;
+    }
+
+    /**
+     * @return the icon, sized and scaled for component {@code c}.
+     */
+    static Icon get( Kind kind, int size, Component c ) {
+        return get( kind, size, scaleOf( c ), c.getGraphicsConfiguration() );
+    }
+
+    /**
+     * Icon painted from an image already scaled to the screen pixels.
+     */
+    private static final class ScaledIcon implements Icon {
+
+        private final BufferedImage image;
+        private final int size;
+
+        ScaledIcon( BufferedImage source, int size, double scale,
+                GraphicsConfiguration gc ) {
+
+            this.size = size;
+            int pixels = Math.max( (int) Math.ceil( size * scale ), 1 );
+            image = gc != null
+                    ? gc.createCompatibleImage(
+                            pixels, pixels, Transparency.TRANSLUCENT )
+                    : new BufferedImage( pixels, pixels,
+                                         BufferedImage.TYPE_INT_ARGB_PRE );
+            /* fit the source in the square, keeping its aspect ratio */
+            double f = Math.min( (double) pixels / source.getWidth(),
+                                 (double) pixels / source.getHeight() );
+            int w = (int) Math.round( source.getWidth() * f ),
+                    h = (int) Math.round( source.getHeight() * f );
+            Graphics2D g = image.createGraphics();
+            try {
+                g.setRenderingHint( RenderingHints.KEY_INTERPOLATION,
+                        RenderingHints.VALUE_INTERPOLATION_BICUBIC );
+                g.drawImage( source, (pixels - w) / 2, (pixels - h) / 2,
+                             w, h, null );
+            } finally {
+                g.dispose();
+            }
+        }
+
+        @Override
+        public void paintIcon( Component c, Graphics g, int x, int y ) {
+            /* the scale of the screen makes it a 1:1 copy */
+            g.drawImage( image, x, y, size, size, null );
+        }
+
+        @Override
+        public int getIconWidth() {
+            return size;
+        }
+
+        @Override
+        public int getIconHeight() {
+            return size;
+        }
+    }
+}
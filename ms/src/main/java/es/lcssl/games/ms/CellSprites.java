@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2023, lcu
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package es.lcssl.games.ms;
+
+import es.lcssl.games.ms.CellIcons.Kind;
+
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import javax.swing.Icon;
+
+/**
+ * Atlas of the pictures of every possible state of a board cell, rendered
+ * once for a cell size (and screen scale factor) side by side in a single
+ * image compatible with the screen. Painting a cell is then a plain copy
+ * of a piece of that image, which Java2D keeps accelerated, so repainting
+ * the whole of a big board is cheap.
+ *
+ * @author lcu
+ */
+final class CellSprites {
+
+    /**
+     * A covered cell.
+     */
+    static final int HIDDEN = 0;
+
+    /**
+     * A covered cell flagged as a mine.
+     */
+    static final int FLAGGED = 1;
+
+    /**
+     * A cell wrongly flagged, shown when the game is lost.
+     */
+    static final int QUESTION = 2;
+
+    /**
+     * A mine not flagged, shown when the game is lost.
+     */
+    static final int MINE = 3;
+
+    /**
+     * The mine that exploded.
+     */
+    static final int EXPLODED = 4;
+
+    /**
+     * An uncovered cell, {@code OPEN + n} is the cell with {@code n}
+     * surrounding mines.
+     */
+    static final int OPEN = 5;
+
+    static final int COUNT = OPEN + 9;
+
+    private static final Color BACKGROUND[] = {
+        Color.WHITE, Color.CYAN, Color.GREEN, Color.YELLOW,
+        Color.ORANGE, Color.PINK, Color.MAGENTA, Color.RED,
+        Color.DARK_GRAY };
+    private static final Color COVER = new Color( 0xc0c0c0 );
+    private static final Color GRID = Color.LIGHT_GRAY;
+
+    private final int size;
+    private final double scale;
+    private final int pixels;
+    private final BufferedImage atlas;
+
+    /**
+     * Renders the atlas.
+     *
+     * @param size  the width and height of a cell, in (unscaled) pixels.
+     * @param scale the scale factor of the screen.
+     * @param gc    the configuration of the screen, or {@code null} if not
+     *              known.
+     */
+    CellSprites( int size, double scale, GraphicsConfiguration gc ) {
+
+        this.size = size;
+        this.scale = scale;
+        pixels = Math.max( (int) Math.ceil( size * scale ), 1 );
+        atlas = gc != null
+                ? gc.createCompatibleImage(
+                        COUNT * pixels, pixels, Transparency.OPAQUE )
+                : new BufferedImage( COUNT * pixels, pixels,
+                                     BufferedImage.TYPE_INT_RGB );
+
+        Graphics2D g = atlas.createGraphics();
+        try {
+            g.setRenderingHint( RenderingHints.KEY_TEXT_ANTIALIASING,
+                    RenderingHints.VALUE_TEXT_ANTIALIAS_ON );
+            g.scale( scale, scale );
+            /* the same proportion of the cell as the original 16px icons */
+            int icon_size = Math.max( size * 4 / 7, 8 );
+            Font font = new Font( Font.SANS_SERIF, Font.BOLD,
+                                  Math.max( size * 4 / 7, 6 ) );
+            for ( int i = 0; i < COUNT; i++ ) {
+                Graphics2D cell = (Graphics2D) g.create();
+                try {
+                    /* the sprites may not be a whole number of pixels
+                     * apart when scaled, but they are in the atlas */
+                    cell.translate( i * pixels / scale, 0 );
+                    cell.clipRect( 0, 0, size, size );
+                    render( cell, i, icon_size, font, gc );
+                } finally {
+                    cell.dispose();
+                }
+            }
+        } finally {
+            g.dispose();
+        }
+    }
+
+    private void render( Graphics2D g, int sprite, int icon_size,
+            Font font, GraphicsConfiguration gc ) {
+
+        if ( sprite >= OPEN || sprite == EXPLODED ) {
+            int n = sprite - OPEN;
+            g.setColor( sprite == EXPLODED ? Color.WHITE : BACKGROUND[ n ] );
+            g.fillRect( 0, 0, size, size );
+            g.setColor( GRID );
+            g.drawRect( 0, 0, size - 1, size - 1 );
+            if ( n > 0 ) {
+                String text = Integer.toString( n );
+                g.setFont( font );
+                g.setColor( n >= 6 ? Color.WHITE : Color.BLACK );
+                FontMetrics fm = g.getFontMetrics();
+                g.drawString( text,
+                              (size - fm.stringWidth( text )) / 2,
+                              (size - fm.getHeight()) / 2 + fm.getAscent() );
+            }
+        } else {
+            g.setColor( COVER );
+            g.fillRect( 0, 0, size, size );
+            g.draw3DRect( 0, 0, size - 1, size - 1, true );
+            g.draw3DRect( 1, 1, size - 3, size - 3, true );
+        }
+        Kind kind = null;
+        switch ( sprite ) {
+        case FLAGGED:
+            kind = Kind.FLAGGED;
+            break;
+        case QUESTION:
+            kind = Kind.QUESTION;
+            break;
+        case MINE:
+            kind = Kind.MINE;
+            break;
+        case EXPLODED:
+            kind = Kind.EXPLODED;
+            break;
+        }
+        if ( kind != null ) {
+            Icon icon = CellIcons.get( kind, icon_size, scale, gc );
+            if ( icon != null ) {
+                icon.paintIcon( null, g,
+                                (size - icon_size) / 2,
+                                (size - icon_size) / 2 );
+            }
+        }
+    }
+
+    /**
+     * @return {@code true} if this atlas was rendered for cells of
+     *         {@code size} pixels shown in component {@code c}.
+     */
+    boolean fits( int size, Component c ) {
+        return this.size == size && scale == CellIcons.scaleOf( c );
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    /**
+     * Paints a cell.
+     *
+     * @param sprite the state of the cell.
+     * @param x      the left side of the cell.
+     * @param y      the top side of the cell.
+     */
+    void paint( Graphics g, int sprite, int x, int y ) {
+        int sx = sprite * pixels;
+        g.drawImage( atlas,
+                     x, y, x + size, y + size,
+                     sx, 0, sx + pixels, pixels,
+                     null );
+    }
+}
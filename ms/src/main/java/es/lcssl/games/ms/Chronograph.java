@@ -121,11 +121,9 @@ public class Chronograph implements Runnable {
      * be displayed.
      */
     protected void update() {
-        LOG.finest( () -> format(
-                INTL.getString( "UPDATE_CALLED" ),
-                this ) );
         prev_value = last_value;
         last_value = getTimeMillis();
+        trace( Trace.Event.CHRONO_TICK );
         if ( prev_value != last_value ) {
             propertyChange.firePropertyChange(
                     PROPERTY_TIMESTAMP,
@@ -141,9 +139,7 @@ public class Chronograph implements Runnable {
      * {@link #update()} is made to refresh anything on screen.
      */
     public synchronized void reset() {
-        LOG.info( () -> format(
-                INTL.getString( "RESET_CALLED" ),
-                this ) );
+        trace( Trace.Event.CHRONO_RESET );
         started = false; // so, chrono is stopped, any started thread will stop
         startTime = System.currentTimeMillis(); // so time starts now
         last_value = 0; // so duration shows 0
@@ -157,13 +153,9 @@ public class Chronograph implements Runnable {
      * everything on the screen.
      */
     public synchronized void start() {
-        LOG.info( () -> format(
-                INTL.getString( "START_CALLED" ),
-                this ) );
+        trace( Trace.Event.CHRONO_START );
         if ( started ) {
-            LOG.info( () -> format(
-                    INTL.getString( "ALREADY_STARTED" ),
-                    this ) );
+            trace( Trace.Event.CHRONO_ALREADY_STARTED );
             return; // already started.
         }
         startTime = System.currentTimeMillis();
@@ -179,9 +171,7 @@ public class Chronograph implements Runnable {
      */
     public synchronized void stop() {
         /* now we are stopped. */
-        LOG.info( () -> format(
-                INTL.getString( "STOP_CALLED" ),
-                this ) );
+        trace( Trace.Event.CHRONO_STOP );
         started = false;
         if (updatingThread != null)
             updatingThread.interrupt();
@@ -189,21 +179,31 @@ public class Chronograph implements Runnable {
         update();
     }
 
+    /**
+     * Records an event of this {@code Chronograph} in the {@link Trace},
+     * with the last value shown.
+     */
+    private void trace( Trace.Event event ) {
+        Trace.record( event, System.identityHashCode( this ), last_value );
+    }
+
     public synchronized boolean isStarted() {
         return started;
     }
 
     @Override
     public void run() {
+        long last_tick = System.nanoTime();
         while ( isStarted() ) {
             try {
                 Thread.sleep( WHEN_TO_RUN );
                 update();
+                long now = System.nanoTime();
+                GameMetrics.get().chronographTick( now - last_tick );
+                last_tick = now;
             } catch ( InterruptedException e ) {
                 // Just ignore the exception, as the next loop test will fail.
-                LOG.fine( () -> format(
-                        INTL.getString( "INTERRUPTED" ),
-                        this ) );
+                trace( Trace.Event.CHRONO_INTERRUPTED );
             }
         }
     }
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2023, lcu
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package es.lcssl.games.ms;
+
+import java.util.Arrays;
+
+/**
+ * Values of the scores a {@link HallOfFameModel} doesn't hold in memory,
+ * kept to count them exactly when ranking new scores. They are plain
+ * {@code long}s in an array, eight bytes a score, instead of the objects
+ * of the scores held.
+ *
+ * <p>
+ * Values are appended as they come and sorted when counted. A loaded
+ * hall of fame drops many values at once and sorts them once; then each
+ * new one dropped is merged in place, so it costs a move of the array,
+ * not a sort. Not thread safe: the model guards it with its own lock.
+ */
+final class DroppedScores {
+
+    private long[] values = new long[ 16 ];
+    private int size;
+
+    /**
+     * Number of values at the start of {@link #values} that are sorted.
+     */
+    private int sorted;
+
+    void add( long value ) {
+        if ( size == values.length ) {
+            values = Arrays.copyOf( values, size * 2 );
+        }
+        values[ size++ ] = value;
+    }
+
+    void clear() {
+        values = new long[ 16 ];
+        size = 0;
+        sorted = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of values up to {@code value}, exactly.
+     */
+    int countUpTo( long value ) {
+        sort();
+        int lft = 0, rgt = size;
+        while ( lft < rgt ) {
+            int mid = (lft + rgt) >>> 1;
+            if ( values[ mid ] <= value ) {
+                lft = mid + 1;
+            } else {
+                rgt = mid;
+            }
+        }
+        return lft;
+    }
+
+    /**
+     * Adds all the values to {@code statistics}.
+     */
+    void addTo( SolveTimeStatistics statistics ) {
+        for ( int i = 0; i < size; i++ ) {
+            statistics.add( values[ i ] );
+        }
+    }
+
+    /**
+     * Sorts the values appended since the last time and merges them with
+     * the sorted ones, from the end, so the merge needs no more room than
+     * a copy of the new values.
+     */
+    private void sort() {
+        if ( sorted == size ) {
+            return;
+        }
+        long[] added = Arrays.copyOfRange( values, sorted, size );
+        Arrays.sort( added );
+        int i = sorted - 1, j = added.length - 1, k = size - 1;
+        while ( j >= 0 ) {
+            values[ k-- ] = i >= 0 && values[ i ] > added[ j ]
+                    ? values[ i-- ]
+                    : added[ j-- ];
+        }
+        sorted = size;
+    }
+}
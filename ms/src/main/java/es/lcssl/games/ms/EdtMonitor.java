@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2023, lcu
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package es.lcssl.games.ms;
+
+import java.awt.Color;
+import java.awt.EventQueue;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.util.ResourceBundle;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import javax.swing.JComponent;
+import javax.swing.Timer;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Watches how long the events wait in the event queue before being
+ * dispatched. A daemon thread posts a probe event every
+ * {@link #PERIOD_MILLIS} milliseconds (only one at a time) and the time
+ * it waits is recorded in the {@link GameMetrics}. When a probe waits
+ * more than the stall threshold, the stall is counted and logged against
+ * the {@link Operation} the board was doing at that moment, which the
+ * code of the board declares with {@link #enter(Operation)} and
+ * {@link #exit(Operation)}.
+ *
+ * <p>
+ * This class is thread safe.
+ *
+ * @author lcu
+ */
+final class EdtMonitor {
+
+    private static final Logger LOG
+            = Logger.getLogger( EdtMonitor.class.getName() );
+
+    private static final ResourceBundle INTL
+            = ResourceBundle.getBundle( EdtMonitor.class.getName() );
+
+    /**
+     * Time between probes, in milliseconds.
+     */
+    public static final long PERIOD_MILLIS = 50;
+
+    /**
+     * Waits longer than this, in milliseconds, are stalls unless another
+     * threshold is given to {@link #start(long)}.
+     */
+    public static final long DEFAULT_STALL_MILLIS = 200;
+
+    /**
+     * What the event dispatch thread may be busy with.
+     */
+    enum Operation {
+        /**
+         * Nothing declared.
+         */
+        IDLE,
+        /**
+         * Placing the mines of a new game.
+         */
+        GENERATION,
+        /**
+         * Uncovering the cells of a click.
+         */
+        CASCADE,
+        /**
+         * Showing a modal dialog.
+         */
+        DIALOG,
+        /**
+         * Reading or writing the hall of fame.
+         */
+        HALL_OF_FAME
+    }
+
+    private static volatile Operation current = Operation.IDLE;
+    private static volatile Operation lastStall;
+    private static volatile long lastLatency;
+
+    private static ScheduledExecutorService probes;
+    private static long stallNanos;
+
+    /* the probe posted and not dispatched yet, if any: only the prober
+     * posts one, only the event dispatch thread clears it */
+    private static volatile boolean outstanding;
+    private static volatile long postedAt;
+    private static boolean flagged;
+
+    private EdtMonitor() {
+    }
+
+    /**
+     * Starts watching the event queue, if not already started.
+     *
+     * @param stall_millis waits longer than this, in milliseconds, are
+     *                     counted as stalls.
+     */
+    static synchronized void start( long stall_millis ) {
+        if ( probes != null ) {
+            return;
+        }
+        stallNanos = TimeUnit.MILLISECONDS.toNanos( stall_millis );
+        probes = Executors.newSingleThreadScheduledExecutor( r -> {
+            Thread t = new Thread( r, EdtMonitor.class.getSimpleName() );
+            t.setDaemon( true );
+            return t;
+        } );
+        probes.scheduleAtFixedRate( EdtMonitor::probe,
+                                    PERIOD_MILLIS, PERIOD_MILLIS,
+                                    TimeUnit.MILLISECONDS );
+    }
+
+    /**
+     * Posts a probe, or checks whether the one posted is taking too long.
+     * Runs in the prober thread.
+     */
+    private static void probe() {
+        long now = System.nanoTime();
+        if ( !outstanding ) {
+            postedAt = now;
+            flagged = false;
+            outstanding = true;
+            EventQueue.invokeLater( EdtMonitor::dispatched );
+        } else if ( !flagged && now - postedAt > stallNanos ) {
+            flagged = true;
+            Operation op = current;
+            lastStall = op;
+            GameMetrics.get().stall( op );
+            Trace.record( Trace.Event.STALL, op.ordinal(), now - postedAt );
+            LOG.warning( () -> format(
+                    INTL.getString( "STALL" ),
+                    TimeUnit.NANOSECONDS.toMillis( now - postedAt ),
+                    op ) );
+        }
+    }
+
+    private static void dispatched() {
+        long latency = System.nanoTime() - postedAt;
+        lastLatency = latency;
+        GameMetrics.get().eventQueueLatency( latency );
+        outstanding = false;
+    }
+
+    /**
+     * Declares the operation the event dispatch thread is starting. Other
+     * threads (the one of a {@link GameServer}, playing its boards) are
+     * not followed, and nothing is declared.
+     *
+     * @param op the operation.
+     * @return the operation it was doing, to give to
+     *         {@link #exit(Operation)} when done, {@code null} if not
+     *         called from the event dispatch thread.
+     */
+    static Operation enter( Operation op ) {
+        if ( !EventQueue.isDispatchThread() ) {
+            return null;
+        }
+        Operation previous = current;
+        current = op;
+        return previous;
+    }
+
+    /**
+     * Declares the end of an operation.
+     *
+     * @param previous the value returned by the matching
+     *                 {@link #enter(Operation)}.
+     */
+    static void exit( Operation previous ) {
+        if ( previous != null ) {
+            current = previous;
+        }
+    }
+
+    /**
+     * A transparent component showing the last event queue latency and
+     * the stalls, to be used as the glass pane of a frame.
+     */
+    static class Overlay extends JComponent {
+
+        private static final int REFRESH_MILLIS = 250;
+
+        private final Timer refresh = new Timer(
+                REFRESH_MILLIS, e -> repaint() );
+
+        Overlay() {
+            setOpaque( false );
+        }
+
+        @Override
+        public void addNotify() {
+            super.addNotify();
+            refresh.start();
+        }
+
+        @Override
+        public void removeNotify() {
+            refresh.stop();
+            super.removeNotify();
+        }
+
+        @Override
+        protected void paintComponent( Graphics g ) {
+            Operation stall = lastStall;
+            String text = format(
+                    INTL.getString( "OVERLAY" ),
+                    TimeUnit.NANOSECONDS.toMillis( lastLatency ),
+                    GameMetrics.get().getEventQueueLatencyMicros().getP99()
+                    / 1000,
+                    GameMetrics.get().getStalls(),
+                    stall == null ? "-" : stall );
+            FontMetrics fm = g.getFontMetrics();
+            int w = fm.stringWidth( text ) + 8,
+                    h = fm.getHeight() + 4,
+                    x = getWidth() - w - 4,
+                    y = 4;
+            g.setColor( new Color( 0, 0, 0, 160 ) );
+            g.fillRect( x, y, w, h );
+            g.setColor( Color.WHITE );
+            g.drawString( text, x + 4, y + 2 + fm.getAscent() );
+        }
+    }
+}
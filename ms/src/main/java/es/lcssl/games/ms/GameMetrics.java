@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2023, lcu
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package es.lcssl.games.ms;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Counters and latency histograms of the game, the hall of fame and the
+ * chronographs, shared by the whole program. Recording a value is a few
+ * atomic increments, so they are recorded always; they are only published
+ * (as a {@link GameMetricsMXBean}) once {@link #register()} is called.
+ *
+ * <p>
+ * This class is thread safe.
+ *
+ * @author lcu
+ */
+public final class GameMetrics implements GameMetricsMXBean {
+
+    private static final Logger LOG
+            = Logger.getLogger( GameMetrics.class.getName() );
+
+    private static final ResourceBundle INTL
+            = ResourceBundle.getBundle( GameMetrics.class.getName() );
+
+    /**
+     * Name of the bean in the platform MBean server.
+     */
+    public static final String OBJECT_NAME
+            = "es.lcssl.games.ms:type=GameMetrics";
+
+    private static final GameMetrics INSTANCE = new GameMetrics();
+
+    private final LongAdder clicks = new LongAdder();
+    private final Histogram cascadeSizes = new Histogram();
+    private final Histogram revealMicros = new Histogram();
+    private final Histogram generationMicros = new Histogram();
+    private final Histogram hallOfFameLoadMicros = new Histogram();
+    private final Histogram hallOfFameWriteMicros = new Histogram();
+    private final LongAdder chronographTicks = new LongAdder();
+    private final Histogram chronographTickMicros = new Histogram();
+    private final Histogram eventQueueLatencyMicros = new Histogram();
+    private final LongAdder stalls = new LongAdder();
+
+    /**
+     * The stalls by operation, filled in the constructor and never
+     * changed after, so it can be read without locking.
+     */
+    private final Map<EdtMonitor.Operation, LongAdder> stallsByOperation
+            = new EnumMap<>( EdtMonitor.Operation.class );
+
+    private GameMetrics() {
+        for ( EdtMonitor.Operation op : EdtMonitor.Operation.values() ) {
+            stallsByOperation.put( op, new LongAdder() );
+        }
+    }
+
+    public static GameMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Publishes the metrics in the platform MBean server, as
+     * {@link #OBJECT_NAME}. Failures are logged, as the game can go on
+     * without them.
+     */
+    public static void register() {
+        try {
+            ObjectName name = new ObjectName( OBJECT_NAME );
+            if ( !ManagementFactory.getPlatformMBeanServer()
+                    .isRegistered( name ) ) {
+                ManagementFactory.getPlatformMBeanServer()
+                        .registerMBean( INSTANCE, name );
+            }
+        } catch ( JMException ex ) {
+            LOG.warning( () -> format(
+                    INTL.getString( "CANNOT_REGISTER" ),
+                    OBJECT_NAME,
+                    ex ) );
+        }
+    }
+
+    private static long micros( long nanos ) {
+        return TimeUnit.NANOSECONDS.toMicros( nanos );
+    }
+
+    void click() {
+        clicks.increment();
+    }
+
+    /**
+     * Records a click that uncovered {@code cells} cells in
+     * {@code nanos} nanoseconds.
+     */
+    void cascade( int cells, long nanos ) {
+        cascadeSizes.record( cells );
+        revealMicros.record( micros( nanos ) );
+    }
+
+    void generation( long nanos ) {
+        generationMicros.record( micros( nanos ) );
+    }
+
+    void hallOfFameLoad( long nanos ) {
+        hallOfFameLoadMicros.record( micros( nanos ) );
+    }
+
+    void hallOfFameWrite( long nanos ) {
+        hallOfFameWriteMicros.record( micros( nanos ) );
+    }
+
+    /**
+     * Records a chronograph tick, {@code nanos} nanoseconds after the
+     * previous one.
+     */
+    void chronographTick( long nanos ) {
+        chronographTicks.increment();
+        chronographTickMicros.record( micros( nanos ) );
+    }
+
+    /**
+     * Records an event that waited {@code nanos} nanoseconds in the event
+     * queue.
+     */
+    void eventQueueLatency( long nanos ) {
+        eventQueueLatencyMicros.record( micros( nanos ) );
+    }
+
+    /**
+     * Records a stall of the event dispatch thread during {@code op}.
+     */
+    void stall( EdtMonitor.Operation op ) {
+        stalls.increment();
+        stallsByOperation.get( op ).increment();
+    }
+
+    @Override
+    public long getClicks() {
+        return clicks.sum();
+    }
+
+    @Override
+    public Histogram.Snapshot getCascadeSizes() {
+        return cascadeSizes.snapshot();
+    }
+
+    @Override
+    public Histogram.Snapshot getRevealMicros() {
+        return revealMicros.snapshot();
+    }
+
+    @Override
+    public Histogram.Snapshot getGenerationMicros() {
+        return generationMicros.snapshot();
+    }
+
+    @Override
+    public Histogram.Snapshot getHallOfFameLoadMicros() {
+        return hallOfFameLoadMicros.snapshot();
+    }
+
+    @Override
+    public Histogram.Snapshot getHallOfFameWriteMicros() {
+        return hallOfFameWriteMicros.snapshot();
+    }
+
+    @Override
+    public long getChronographTicks() {
+        return chronographTicks.sum();
+    }
+
+    @Override
+    public Histogram.Snapshot getChronographTickMicros() {
+        return chronographTickMicros.snapshot();
+    }
+
+    @Override
+    public Histogram.Snapshot getEventQueueLatencyMicros() {
+        return eventQueueLatencyMicros.snapshot();
+    }
+
+    @Override
+    public long getStalls() {
+        return stalls.sum();
+    }
+
+    @Override
+    public Map<String, Long> getStallsByOperation() {
+        Map<String, Long> res = new LinkedHashMap<>();
+        stallsByOperation.forEach(
+                ( op, n ) -> res.put( op.name(), n.sum() ) );
+        return res;
+    }
+
+    @Override
+    public String dumpTrace() throws IOException {
+        return Trace.dump().getPath();
+    }
+
+    @Override
+    public void reset() {
+        clicks.reset();
+        cascadeSizes.reset();
+        revealMicros.reset();
+        generationMicros.reset();
+        hallOfFameLoadMicros.reset();
+        hallOfFameWriteMicros.reset();
+        chronographTicks.reset();
+        chronographTickMicros.reset();
+        eventQueueLatencyMicros.reset();
+        stalls.reset();
+        stallsByOperation.values().forEach( LongAdder::reset );
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2023, lcu
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package es.lcssl.games.ms;
+
+import java.util.Map;
+
+/**
+ * Management interface of the {@link GameMetrics}, to watch the game
+ * with standard JMX tools (e.g. {@code jconsole}). Durations are in
+ * microseconds, sizes in cells.
+ *
+ * @author lcu
+ */
+public interface GameMetricsMXBean {
+
+    /**
+     * @return the number of cells pushed with the mouse.
+     */
+    long getClicks();
+
+    /**
+     * @return the number of cells uncovered by each click, counting the
+     *         ones uncovered in cascade.
+     */
+    Histogram.Snapshot getCascadeSizes();
+
+    /**
+     * @return the time from a click until all the cells it uncovers are
+     *         uncovered.
+     */
+    Histogram.Snapshot getRevealMicros();
+
+    /**
+     * @return the time to place the mines of a new game.
+     */
+    Histogram.Snapshot getGenerationMicros();
+
+    /**
+     * @return the time to load the scores of a hall of fame.
+     */
+    Histogram.Snapshot getHallOfFameLoadMicros();
+
+    /**
+     * @return the time to write a new score to its file.
+     */
+    Histogram.Snapshot getHallOfFameWriteMicros();
+
+    /**
+     * @return the number of times the chronographs refreshed their
+     *         display.
+     */
+    long getChronographTicks();
+
+    /**
+     * @return the time between chronograph ticks, to spot the ones late.
+     */
+    Histogram.Snapshot getChronographTickMicros();
+
+    /**
+     * @return the time events wait in the event queue before being
+     *         dispatched.
+     */
+    Histogram.Snapshot getEventQueueLatencyMicros();
+
+    /**
+     * @return the number of times events waited too long in the event
+     *         queue.
+     */
+    long getStalls();
+
+    /**
+     * @return the stalls, by the board operation in progress when they
+     *         were detected.
+     */
+    Map<String, Long> getStallsByOperation();
+
+    /**
+     * Writes the {@link Trace} of the last game events to a temporary
+     * file.
+     *
+     * @return the path of the file written.
+     * @throws java.io.IOException if it cannot be written.
+     */
+    String dumpTrace() throws java.io.IOException;
+
+    /**
+     * Sets all the metrics to zero.
+     */
+    void reset();
+}
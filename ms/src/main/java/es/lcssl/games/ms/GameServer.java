@@ -0,0 +1,567 @@
+/*
+ * Copyright (c) 2023, lcu
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package es.lcssl.games.ms;
+
+import es.lcssl.games.ms.HallOfFameModel.Score;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.ResourceBundle;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Headless server hosting many independent games, one per connection, on
+ * the loopback interface. All the connections are served by one thread,
+ * with non blocking channels; it is the only one playing the boards, so
+ * it plays the role the event dispatch thread has for the board shown in
+ * a frame. The games won on the square board are recorded in the hall of
+ * fame, in background.
+ *
+ * <p>
+ * The protocol is made of ASCII lines, with the fields separated by one
+ * space. Each request gets one reply line:
+ *
+ * <ul>
+ * <li>{@code NAME who} sets the name recorded in the hall of fame
+ * ({@code OK}).
+ * <li>{@code NEW [rows cols [prob [topology]]]} starts a game, by default
+ * with the configuration of the server ({@code GAME rows cols mines
+ * topology}).
+ * <li>{@code OPEN r c ...}, {@code FLAG r c ...} and {@code CHORD r c ...}
+ * uncover covered cells (but not flagged ones), flag (or unflag) cells,
+ * and uncover the unflagged neighbours of uncovered cells, as many as
+ * given, in one
+ * {@link MineSweeper#apply(int[], byte[]) batch} ({@code DIFF delta},
+ * the {@link BoardDelta} of the moves as text, with the cells uncovered,
+ * flagged and unflagged, and the cell exploded, numbered
+ * {@code r * cols + c}; the mines shown on losing are not in it, they
+ * are asked with {@code STATE}).
+ * <li>{@code STATE} tells the whole board ({@code STATE status cells_to_go
+ * mines_to_mark rows cols cells}, a character per cell, row after row:
+ * {@code .} covered, {@code F} flagged, the mines around, or, once the
+ * game is lost, {@code *} for the mines not flagged).
+ * <li>{@code QUIT} ends the connection ({@code BYE}).
+ * </ul>
+ *
+ * The status is {@code PLAYING}, {@code WON} or {@code LOST}. Wrong
+ * requests get {@code ERR reason}. Boards are at most
+ * {@link #MAX_CELLS} cells, all of them at most {@link #MAX_TOTAL_CELLS},
+ * and there are at most {@link #MAX_SESSIONS} connections: a {@code NEW}
+ * over the total gets {@code ERR SERVER_FULL}, and so do the connections
+ * over the maximum, before being closed.
+ *
+ * @author lcu
+ */
+final class GameServer implements Closeable {
+
+    private static final Logger LOG
+            = Logger.getLogger( GameServer.class.getName() );
+
+    private static final ResourceBundle INTL
+            = ResourceBundle.getBundle( GameServer.class.getName() );
+
+    /**
+     * Largest request line (and so largest batch of moves) accepted.
+     */
+    static final int MAX_LINE = 4096;
+
+    /**
+     * Largest board a session may ask for.
+     */
+    static final int MAX_CELLS = 256 * 256;
+
+    /**
+     * Largest number of cells of all the boards played at once. A board
+     * takes some 50 bytes per cell, with its adjacency table and
+     * snapshots, so this is some 400 MB.
+     */
+    static final long MAX_TOTAL_CELLS = 1 << 23;
+
+    /**
+     * Largest number of connections at once.
+     */
+    static final int MAX_SESSIONS = 10_000;
+
+    private static final Pattern NAME_PATTERN
+            = Pattern.compile( "[A-Za-z0-9_.-]{1,32}" );
+
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final int rows, cols;
+    private final double prob;
+    private final Topology topology;
+    private final HallOfFameCache hallOfFame;
+    private volatile boolean closed;
+    private int sessions;
+    private long cellsInUse;
+
+    private final ExecutorService recorder = Executors.newSingleThreadExecutor(
+            r -> {
+                Thread t = new Thread( r, "game-server-recorder" );
+                t.setDaemon( true );
+                return t;
+            } );
+
+    /**
+     * Opens the server socket.
+     *
+     * @param port        the port on the loopback interface, {@code 0} for
+     *                    any free one.
+     * @param rows        the rows of a new game, if not told.
+     * @param cols        the columns of a new game, if not told.
+     * @param prob        the mine probability of a new game, if not told.
+     * @param topology    the topology of a new game, if not told.
+     * @param hall_of_fame where the games won are recorded.
+     * @throws IOException if the port cannot be bound.
+     */
+    GameServer( int port, int rows, int cols, double prob,
+            Topology topology, HallOfFameCache hall_of_fame )
+            throws IOException {
+
+        this.rows = rows;
+        this.cols = cols;
+        this.prob = prob;
+        this.topology = topology;
+        hallOfFame = hall_of_fame;
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind( new InetSocketAddress(
+                InetAddress.getLoopbackAddress(), port ) );
+        server.configureBlocking( false );
+        server.register( selector, SelectionKey.OP_ACCEPT );
+    }
+
+    /**
+     * @return the port the server listens on.
+     */
+    int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * Serves the connections, in the calling thread, until
+     * {@link #close() closed}.
+     *
+     * @throws IOException if the server socket fails.
+     */
+    void serve() throws IOException {
+
+        LOG.info( () -> format( INTL.getString( "LISTENING" ), getPort() ) );
+        try {
+            while ( !closed ) {
+                selector.select();
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while ( it.hasNext() ) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if ( !key.isValid() ) {
+                        continue;
+                    }
+                    if ( key.isAcceptable() ) {
+                        accept();
+                        continue;
+                    }
+                    Session session = (Session) key.attachment();
+                    try {
+                        if ( key.isReadable() ) {
+                            session.read();
+                        }
+                        if ( key.isValid() && key.isWritable() ) {
+                            session.write();
+                        }
+                    } catch ( IOException ex ) {
+                        LOG.fine( () -> format(
+                                INTL.getString( "SESSION_FAILED" ),
+                                session, ex ) );
+                        session.close();
+                    }
+                }
+            }
+        } finally {
+            for ( SelectionKey key : selector.keys() ) {
+                key.channel().close();
+            }
+            selector.close();
+            recorder.shutdown();
+        }
+    }
+
+    /**
+     * Stops serving, closing all the connections.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if ( channel == null ) {
+            return;
+        }
+        channel.configureBlocking( false );
+        if ( sessions >= MAX_SESSIONS ) {
+            /* tell it, if the reply fits in the socket buffer */
+            try {
+                channel.write( ByteBuffer.wrap(
+                        "ERR SERVER_FULL\n".getBytes(
+                                StandardCharsets.US_ASCII ) ) );
+                channel.close();
+            } catch ( IOException ex ) {
+                /* a failure of this client, not of the server */
+                LOG.fine( () -> format( INTL.getString( "SESSION_FAILED" ),
+                                        channel, ex ) );
+            }
+            LOG.fine( () -> format( INTL.getString( "SESSION_REFUSED" ),
+                                    sessions ) );
+            return;
+        }
+        Session session = new Session( channel );
+        session.key = channel.register(
+                selector, SelectionKey.OP_READ, session );
+        sessions++;
+        LOG.fine( () -> format( INTL.getString( "SESSION_OPENED" ),
+                                session, sessions ) );
+    }
+
+    /**
+     * Records a game won, if on the square board (as only those enter the
+     * hall of fame). The score is only appended to the score file, in
+     * background: the model reads it back and adds it in the event
+     * dispatch thread, where its list changes.
+     */
+    private void record( MineSweeper board, int mines, String who,
+            long when, long score ) {
+
+        if ( board.getTopology() != Topology.SQUARE ) {
+            return;
+        }
+        int r = board.getRows(),
+                c = board.getCols();
+        recorder.execute( () -> {
+            try {
+                Score added = hallOfFame.get( r, c, mines )
+                        .appendScore( who, when, score );
+                LOG.info( () -> format( INTL.getString( "SCORE_ADDED" ),
+                                        who,
+                                        added.getPosition(),
+                                        added.getScoreAsString() ) );
+            } catch ( RuntimeException ex ) {
+                LOG.log( Level.WARNING, ex, () -> format(
+                         INTL.getString( "CANNOT_ADD_SCORE" ), who, ex ) );
+            }
+        } );
+    }
+
+    /**
+     * A connection and its game.
+     */
+    private final class Session {
+
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private final ByteBuffer in = ByteBuffer.allocate( MAX_LINE );
+        private ByteBuffer out = ByteBuffer.allocate( 256 );
+        private final StringBuilder reply = new StringBuilder();
+        private boolean quit;
+
+        private String who = System.getProperty( "user.name" );
+        private MineSweeper board;
+        private int mines;
+        private long started = -1;
+
+        Session( SocketChannel channel ) {
+            this.channel = channel;
+        }
+
+        /**
+         * Runs the requests received. No more are read until the replies
+         * are written, so a client that doesn't read its replies doesn't
+         * make them pile up here.
+         */
+        void read() throws IOException {
+
+            if ( channel.read( in ) < 0 ) {
+                close();
+                return;
+            }
+            byte[] bytes = in.array();
+            int first = 0,
+                    end = in.position();
+            for ( int i = 0; i < end && !quit; i++ ) {
+                if ( bytes[i] == '\n' ) {
+                    int last = i > first && bytes[i - 1] == '\r' ? i - 1 : i;
+                    execute( new String( bytes, first, last - first,
+                                         StandardCharsets.US_ASCII ) );
+                    first = i + 1;
+                }
+            }
+            in.flip();
+            in.position( first );
+            in.compact();
+            if ( !in.hasRemaining() && !quit ) {
+                reply.append( "ERR LINE_TOO_LONG\n" );
+                quit = true;
+            }
+            flush();
+        }
+
+        /**
+         * Writes the replies pending.
+         */
+        void write() throws IOException {
+            out.flip();
+            channel.write( out );
+            out.compact();
+            if ( out.position() > 0 ) {
+                key.interestOps( SelectionKey.OP_WRITE );
+            } else if ( quit ) {
+                close();
+            } else {
+                key.interestOps( SelectionKey.OP_READ );
+            }
+        }
+
+        private void flush() throws IOException {
+            if ( reply.length() == 0 ) {
+                return;
+            }
+            if ( out.remaining() < reply.length() ) {
+                ByteBuffer bigger = ByteBuffer.allocate(
+                        Math.max( 2 * out.capacity(),
+                                  out.position() + reply.length() ) );
+                out.flip();
+                bigger.put( out );
+                out = bigger;
+            }
+            for ( int i = 0; i < reply.length(); i++ ) {
+                out.put( (byte) reply.charAt( i ) );
+            }
+            reply.setLength( 0 );
+            write();
+        }
+
+        void close() {
+            if ( !channel.isOpen() ) {
+                return;
+            }
+            key.cancel();
+            try {
+                channel.close();
+            } catch ( IOException ex ) {
+                /* closed anyway */
+            }
+            sessions--;
+            if ( board != null ) {
+                cellsInUse -= board.getRows() * board.getCols();
+                board = null;
+            }
+            LOG.fine( () -> format( INTL.getString( "SESSION_CLOSED" ),
+                                    this, sessions ) );
+        }
+
+        private void execute( String line ) {
+            String[] args = line.split( " " );
+            try {
+                switch ( args[0] ) {
+                case "NAME":
+                    if ( args.length != 2
+                            || !NAME_PATTERN.matcher( args[1] ).matches() ) {
+                        throw new IllegalArgumentException( line );
+                    }
+                    who = args[1];
+                    reply.append( "OK" );
+                    break;
+                case "NEW":
+                    start( args );
+                    break;
+                case "OPEN":
+                    move( args, MineSweeper.MOVE_OPEN );
+                    break;
+                case "FLAG":
+                    move( args, MineSweeper.MOVE_FLAG );
+                    break;
+                case "CHORD":
+                    move( args, MineSweeper.MOVE_CHORD );
+                    break;
+                case "STATE":
+                    state();
+                    break;
+                case "QUIT":
+                    reply.append( "BYE" );
+                    quit = true;
+                    break;
+                default:
+                    reply.append( "ERR UNKNOWN_COMMAND" );
+                    break;
+                }
+            } catch ( IllegalArgumentException ex ) {
+                reply.append( "ERR BAD_ARGUMENTS" );
+            }
+            reply.append( '\n' );
+        }
+
+        private void start( String[] args ) {
+
+            int r = rows, c = cols;
+            double p = prob;
+            Topology t = topology;
+            if ( args.length == 2 || args.length > 5 ) {
+                throw new IllegalArgumentException();
+            }
+            if ( args.length >= 3 ) {
+                r = Integer.parseInt( args[1] );
+                c = Integer.parseInt( args[2] );
+            }
+            if ( args.length >= 4 ) {
+                p = Double.parseDouble( args[3] );
+            }
+            if ( args.length == 5 ) {
+                t = Topology.valueOf( args[4].toUpperCase( Locale.ROOT ) );
+            }
+            if ( r < 1 || c < 1 || (long) r * c > MAX_CELLS
+                    || !(p > 0.0 && p < 1.0) ) {
+                throw new IllegalArgumentException();
+            }
+            if ( board != null && board.getRows() == r
+                    && board.getCols() == c
+                    && board.getTopology() == t
+                    && MineSweeper.minesFor( r, c, p ) == mines ) {
+                board.init();
+            } else {
+                long in_use = cellsInUse + r * c - (board == null
+                        ? 0
+                        : board.getRows() * board.getCols());
+                if ( in_use > MAX_TOTAL_CELLS ) {
+                    reply.append( "ERR SERVER_FULL" );
+                    return;
+                }
+                board = new MineSweeper( r, c, p, t );
+                cellsInUse = in_use;
+            }
+            mines = board.getMinesToMark();
+            started = -1;
+            reply.append( "GAME " ).append( r )
+                    .append( ' ' ).append( c )
+                    .append( ' ' ).append( mines )
+                    .append( ' ' ).append( t );
+        }
+
+        /**
+         * Applies the moves of a request, all with the same action. The
+         * board skips the opens of cells already uncovered and the chords
+         * of cells still covered, as they are done.
+         */
+        private void move( String[] args, byte action ) {
+
+            if ( board == null ) {
+                reply.append( "ERR NO_GAME" );
+                return;
+            }
+            if ( args.length < 3 || args.length % 2 == 0 ) {
+                throw new IllegalArgumentException();
+            }
+            int c = board.getCols(),
+                    n = 0,
+                    moves[] = new int[args.length / 2];
+            for ( int i = 1; i < args.length; i += 2 ) {
+                int row = Integer.parseInt( args[i] ),
+                        col = Integer.parseInt( args[i + 1] );
+                if ( row < 0 || row >= board.getRows()
+                        || col < 0 || col >= c ) {
+                    throw new IllegalArgumentException();
+                }
+                moves[n++] = row * c + col;
+            }
+            byte[] actions = new byte[n];
+            Arrays.fill( actions, action );
+            if ( started < 0 ) {
+                started = System.currentTimeMillis();
+            }
+            boolean was_won = board.isWon();
+            MineSweeper.MoveResult result = board.apply( moves, actions );
+            if ( result.isWon() && !was_won ) {
+                long now = System.currentTimeMillis();
+                record( board, mines, who, now, now - started );
+            }
+
+            reply.append( "DIFF " ).append( result.getDelta() );
+        }
+
+        private void state() {
+
+            if ( board == null ) {
+                reply.append( "ERR NO_GAME" );
+                return;
+            }
+            BoardSnapshot snapshot = board.snapshot();
+            boolean lost = snapshot.isLost();
+            reply.append( "STATE " )
+                    .append( snapshot.isWon() ? "WON"
+                             : snapshot.isLost() ? "LOST" : "PLAYING" )
+                    .append( ' ' ).append( snapshot.getCellsToGo() )
+                    .append( ' ' ).append( snapshot.getMinesToMark() )
+                    .append( ' ' ).append( snapshot.getRows() )
+                    .append( ' ' ).append( snapshot.getCols() )
+                    .append( ' ' );
+            for ( int r = 0; r < snapshot.getRows(); r++ ) {
+                for ( int c = 0; c < snapshot.getCols(); c++ ) {
+                    reply.append( snapshot.isFlagged( r, c )
+                            ? 'F'
+                            : snapshot.isOpened( r, c )
+                                    ? (char) ('0' + snapshot.getMines( r, c ))
+                                    : lost && (board.cellAt( r, c )
+                                               & MineSweeper.MINE) != 0
+                                            ? '*'
+                                            : '.' );
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf( channel.socket().getRemoteSocketAddress() );
+        }
+    }
+}
@@ -0,0 +1,380 @@
+/*
+ * Copyright (c) 2023, lcu
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package es.lcssl.games.ms;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.function.IntConsumer;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Cache of {@link HallOfFameModel}s, one per board configuration, shared
+ * by all the hall of fame windows, so switching board configurations
+ * doesn't read the score files again. Models are loaded on demand and the
+ * configurations with score files closest to the one requested are
+ * loaded in background, so they are ready when the player switches to
+ * them. When the cached models hold more than the configured number of
+ * scores, the least recently used ones are evicted (and stop watching the
+ * score directory).
+ *
+ * <p>
+ * This class is thread safe.
+ *
+ * @author lcu
+ */
+public class HallOfFameCache {
+
+    private static final Logger LOG
+            = Logger.getLogger( HallOfFameCache.class.getName() );
+
+    private static final ResourceBundle INTL
+            = ResourceBundle.getBundle( HallOfFameCache.class.getName() );
+
+    /**
+     * Default maximum number of scores held by the cached models.
+     */
+    public static final long DEFAULT_CAPACITY = 1_000_000;
+
+    /**
+     * Default number of neighbour configurations loaded in background.
+     */
+    public static final int DEFAULT_PREFETCH = 2;
+
+    /**
+     * Matches the names of all the files of the hall of fame, capturing
+     * the board configuration.
+     */
+    private static final Pattern CONFIGURATION_PATTERN
+            = Pattern.compile( "([0-9]+)x([0-9]+)-M=([0-9]+)[-.].*" );
+
+    private final File baseDirectory;
+    private final int keep;
+    private final long capacity;
+    private final int prefetch;
+
+    /**
+     * The models, in access order (the least recently used first).
+     */
+    private final LinkedHashMap<Key, FutureTask<HallOfFameModel>> models
+            = new LinkedHashMap<>( 16, 0.75f, true );
+
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(
+            r -> {
+                Thread t = new Thread( r, "hall-of-fame-loader" );
+                t.setDaemon( true );
+                return t;
+            } );
+
+    /**
+     * Board configuration, the key of the cache.
+     */
+    private static final class Key {
+
+        final int rows, cols, mines;
+
+        Key( int rows, int cols, int mines ) {
+            this.rows = rows;
+            this.cols = cols;
+            this.mines = mines;
+        }
+
+        int distance( Key o ) {
+            return Math.abs( rows - o.rows )
+                    + Math.abs( cols - o.cols )
+                    + Math.abs( mines - o.mines );
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash( rows, cols, mines );
+        }
+
+        @Override
+        public boolean equals( Object obj ) {
+            if ( this == obj ) {
+                return true;
+            }
+            if ( obj == null || getClass() != obj.getClass() ) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return rows == other.rows
+                    && cols == other.cols
+                    && mines == other.mines;
+        }
+
+        @Override
+        public String toString() {
+            return rows + "x" + cols + "-M=" + mines;
+        }
+    }
+
+    public HallOfFameCache( File base_dir, int keep ) {
+        this( base_dir, keep, DEFAULT_CAPACITY, DEFAULT_PREFETCH );
+    }
+
+    /**
+     * @param base_dir the directory of the score files.
+     * @param keep     maximum number of scores each model holds in memory
+     *                 (see {@link HallOfFameModel}), {@code 0} for all.
+     * @param capacity maximum number of scores held by all the models
+     *                 (the most recently used one is never evicted).
+     * @param prefetch number of neighbour configurations to load in
+     *                 background each time a configuration is requested.
+     */
+    public HallOfFameCache( File base_dir, int keep, long capacity,
+            int prefetch ) {
+        baseDirectory = base_dir;
+        this.keep = keep;
+        this.capacity = capacity;
+        this.prefetch = prefetch;
+    }
+
+    /**
+     * Returns the model of a board configuration, loading it if it is not
+     * in the cache (or waiting for it, if it is being loaded in
+     * background), and starts loading its neighbours in background.
+     *
+     * @return the model, watching the score directory for new scores.
+     */
+    public HallOfFameModel get( int rows, int cols, int mines ) {
+        return get( new Key( rows, cols, mines ), null );
+    }
+
+    /**
+     * Like {@link #get(int, int, int)}, but loads the model in background,
+     * so the caller (normally the event dispatch thread) doesn't wait for
+     * the score files to be read.
+     *
+     * @param progress if not {@code null}, called (in the loader thread)
+     *                 with the percentage of the score files read, if the
+     *                 model has to be loaded.
+     * @return the future model.
+     */
+    public CompletableFuture<HallOfFameModel> getLater(
+            int rows, int cols, int mines, IntConsumer progress ) {
+
+        Key key = new Key( rows, cols, mines );
+        return CompletableFuture.supplyAsync(
+                () -> get( key, progress ), loader );
+    }
+
+    private HallOfFameModel get( Key key, IntConsumer progress ) {
+
+        FutureTask<HallOfFameModel> task;
+        boolean created;
+        synchronized ( this ) {
+            task = models.get( key );
+            created = task == null;
+            if ( created ) {
+                task = newTask( key, progress );
+                models.put( key, task );
+            }
+        }
+        if ( created ) {
+            /* load it in this thread, no need to wait for the loader */
+            task.run();
+        }
+        if ( prefetch > 0 ) {
+            loader.execute( () -> prefetch( key ) );
+        }
+        try {
+            HallOfFameModel model = task.get();
+            evict();
+            return model;
+        } catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException( ex.toString() );
+        } catch ( ExecutionException ex ) {
+            /* don't keep the failure, try again next time */
+            synchronized ( this ) {
+                models.remove( key, task );
+            }
+            throw new IllegalStateException( format(
+                    INTL.getString( "CANNOT_LOAD" ),
+                    key,
+                    ex.getCause() ), ex.getCause() );
+        }
+    }
+
+    private FutureTask<HallOfFameModel> newTask(
+            Key key, IntConsumer progress ) {
+
+        return new FutureTask<>( () -> {
+            LOG.info( () -> format(
+                    INTL.getString( "LOADING" ),
+                    key ) );
+            HallOfFameModel model = new HallOfFameModel(
+                    key.rows, key.cols, key.mines, baseDirectory, keep,
+                    progress );
+            model.startWatching();
+            return model;
+        } );
+    }
+
+    /**
+     * Loads (in the loader thread) the configurations with score files
+     * closest to {@code key}.
+     */
+    private void prefetch( Key key ) {
+
+        String[] names = baseDirectory.list();
+        if ( names == null ) {
+            return;
+        }
+        Set<Key> found = new LinkedHashSet<>();
+        for ( String name : names ) {
+            Matcher m = CONFIGURATION_PATTERN.matcher( name );
+            if ( m.matches() ) {
+                try {
+                    found.add( new Key(
+                            Integer.parseInt( m.group( 1 ) ),
+                            Integer.parseInt( m.group( 2 ) ),
+                            Integer.parseInt( m.group( 3 ) ) ) );
+                } catch ( NumberFormatException ex ) {
+                    /* not one of ours */
+                }
+            }
+        }
+        found.remove( key );
+        List<Key> neighbours = new ArrayList<>( found );
+        neighbours.sort( ( a, b ) -> Integer.compare(
+                a.distance( key ), b.distance( key ) ) );
+
+        for ( Key k : neighbours.subList(
+                0, Math.min( prefetch, neighbours.size() ) ) ) {
+            FutureTask<HallOfFameModel> task;
+            synchronized ( this ) {
+                if ( models.containsKey( k ) ) {
+                    continue;
+                }
+                task = newTask( k, null );
+                models.put( k, task );
+                /* keep the requested one as the most recently used */
+                models.get( key );
+            }
+            LOG.fine( () -> format(
+                    INTL.getString( "PREFETCH" ),
+                    k,
+                    key ) );
+            task.run();
+            evict();
+        }
+    }
+
+    /**
+     * Evicts the least recently used models while the cached models hold
+     * more scores than the capacity. The most recently used one and the
+     * ones still loading are never evicted.
+     */
+    private void evict() {
+
+        List<HallOfFameModel> evicted = new ArrayList<>();
+        synchronized ( this ) {
+            long total = 0;
+            for ( FutureTask<HallOfFameModel> task : models.values() ) {
+                total += weight( task );
+            }
+            Iterator<Map.Entry<Key, FutureTask<HallOfFameModel>>> it
+                    = models.entrySet().iterator();
+            int left = models.size();
+            while ( total > capacity && left-- > 1 ) {
+                Map.Entry<Key, FutureTask<HallOfFameModel>> e = it.next();
+                FutureTask<HallOfFameModel> task = e.getValue();
+                if ( !task.isDone() ) {
+                    continue;
+                }
+                total -= weight( task );
+                it.remove();
+                LOG.info( () -> format(
+                        INTL.getString( "EVICTED" ),
+                        e.getKey() ) );
+                try {
+                    evicted.add( task.get() );
+                } catch ( InterruptedException | ExecutionException ex ) {
+                    /* nothing to release */
+                }
+            }
+        }
+        for ( HallOfFameModel model : evicted ) {
+            model.stopWatching();
+        }
+    }
+
+    private static long weight( FutureTask<HallOfFameModel> task ) {
+
+        if ( !task.isDone() ) {
+            return 0;
+        }
+        try {
+            return task.get().getSize();
+        } catch ( InterruptedException | ExecutionException ex ) {
+            return 0;
+        }
+    }
+
+    /**
+     * Evicts all the models and stops the background loader.
+     */
+    public void shutdown() {
+
+        loader.shutdownNow();
+        List<FutureTask<HallOfFameModel>> tasks;
+        synchronized ( this ) {
+            tasks = new ArrayList<>( models.values() );
+            models.clear();
+        }
+        for ( FutureTask<HallOfFameModel> task : tasks ) {
+            task.cancel( true );
+            if ( task.isDone() && !task.isCancelled() ) {
+                try {
+                    task.get().stopWatching();
+                } catch ( InterruptedException | ExecutionException ex ) {
+                    /* nothing to release */
+                }
+            }
+        }
+    }
+}
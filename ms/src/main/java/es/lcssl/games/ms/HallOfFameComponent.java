@@ -26,14 +26,18 @@
 package es.lcssl.games.ms;
 
 import java.awt.BorderLayout;
+import java.awt.EventQueue;
 import java.io.File;
 import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 import javax.swing.BorderFactory;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JList;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
 import javax.swing.ListSelectionModel;
 import javax.swing.border.BevelBorder;
@@ -52,41 +56,146 @@ public class HallOfFameComponent extends JFrame {
     private static final ResourceBundle INTL =
             ResourceBundle.getBundle( HallOfFameComponent.class.getName() );
 
-    protected final HallOfFameModel model;
+    protected final HallOfFameCache cache;
+    protected final JLabel label;
     protected final JList<HallOfFameModel.Score> list;
+    protected final StatisticsPanel statistics;
+    protected final JProgressBar progress;
+    protected HallOfFameModel model;
+
+    /**
+     * The model being shown, or loaded to be shown.
+     */
+    private volatile CompletableFuture<HallOfFameModel> pending;
 
     public HallOfFameComponent( MineSweeper ms, File base_dir ) {
-        super( format(
-                INTL.getString( "HALL_OF_FAME_DIALOG_NAME" ),
-                ms.getRows(),
-                ms.getCols(),
-                ms.getMinesToMark() ) );
+        this( ms, base_dir, 0 );
+    }
+
+    /**
+     * @param ms       the board.
+     * @param base_dir the directory of the score files.
+     * @param keep     maximum number of scores to hold in memory, or
+     *                 {@code 0} to hold all of them.
+     */
+    public HallOfFameComponent( MineSweeper ms, File base_dir, int keep ) {
+        this( ms, new HallOfFameCache( base_dir, keep ) );
+    }
+
+    /**
+     * @param ms    the board.
+     * @param cache where to get the models of the board configurations
+     *              from.
+     */
+    public HallOfFameComponent( MineSweeper ms, HallOfFameCache cache ) {
+        this.cache = cache;
         JPanel panel = new JPanel( new BorderLayout() );
-        JLabel label = new JLabel( format(
-                INTL.getString( "HALL_OF_FAME_DIALOG_HEADER" ),
-                ms.getRows(),
-                ms.getCols(),
-                ms.getMinesToMark() ) );
+        label = new JLabel();
         label.setHorizontalAlignment( JLabel.CENTER );
-        panel.add( label, BorderLayout.NORTH );
-        list = new JList<>(
-                model = new HallOfFameModel( ms, base_dir ) );
+        progress = new JProgressBar( 0, 100 );
+        progress.setStringPainted( true );
+        JPanel header = new JPanel( new BorderLayout() );
+        header.add( label, BorderLayout.CENTER );
+        header.add( progress, BorderLayout.SOUTH );
+        panel.add( header, BorderLayout.NORTH );
+        list = new JList<>();
         list.setSelectionMode( ListSelectionModel.SINGLE_SELECTION );
         list.setDragEnabled( false );
+        new ScoreCellRenderer().install( list );
         list.setBorder( BorderFactory.createBevelBorder(
                 BevelBorder.LOWERED ) );
         JScrollPane scroll_pane = new JScrollPane( list );
         panel.add( scroll_pane, BorderLayout.CENTER );
+        statistics = new StatisticsPanel();
+        statistics.setBorder( BorderFactory.createBevelBorder(
+                BevelBorder.LOWERED ) );
+        panel.add( statistics, BorderLayout.SOUTH );
         add( panel );
+        setConfiguration( ms.getRows(), ms.getCols(), ms.getMinesToMark() );
         pack();
     }
 
+    /**
+     * Shows the hall of fame of another board configuration, taking its
+     * model from the cache. If it has to be loaded, it is loaded in
+     * background, showing the progress, and the list is updated when it is
+     * ready. Must be called from the event dispatch thread.
+     */
+    public final void setConfiguration( int rows, int cols, int mines ) {
+        progress.setValue( 0 );
+        progress.setVisible( true );
+        CompletableFuture<HallOfFameModel> future = cache.getLater(
+                rows, cols, mines,
+                percent -> EventQueue.invokeLater(
+                        () -> progress.setValue( percent ) ) );
+        pending = future;
+        future.whenComplete( ( loaded, ex ) -> EventQueue.invokeLater( () -> {
+            if ( pending != future ) {
+                /* another configuration was requested meanwhile */
+                return;
+            }
+            progress.setVisible( false );
+            if ( ex != null ) {
+                LOG.warning( () -> format(
+                        INTL.getString( "CANNOT_LOAD" ),
+                        rows,
+                        cols,
+                        mines,
+                        ex ) );
+                return;
+            }
+            model = loaded;
+            list.setModel( model );
+            statistics.setModel( model );
+        } ) );
+        setTitle( format(
+                INTL.getString( "HALL_OF_FAME_DIALOG_NAME" ),
+                rows,
+                cols,
+                mines ) );
+        label.setText( format(
+                INTL.getString( "HALL_OF_FAME_DIALOG_HEADER" ),
+                rows,
+                cols,
+                mines ) );
+    }
+
+    public HallOfFameCache getCache() {
+        return cache;
+    }
+
+    /**
+     * @return the model shown, which is not the one of the configuration
+     *         if it is still being loaded (see {@link #whenLoaded}), or
+     *         {@code null} if none has been loaded yet.
+     */
     public HallOfFameModel getModel() {
         return model;
     }
 
+    /**
+     * Runs {@code action} on the event dispatch thread with the model of
+     * the configuration shown, once it is loaded: at once if it already
+     * is, and this is the event dispatch thread. It never waits for the
+     * model, and does not run {@code action} if it cannot be loaded.
+     */
+    public void whenLoaded( Consumer<HallOfFameModel> action ) {
+        CompletableFuture<HallOfFameModel> future = pending;
+        if ( future.isDone() && !future.isCompletedExceptionally()
+                && EventQueue.isDispatchThread() ) {
+            action.accept( future.getNow( null ) );
+            return;
+        }
+        future.thenAccept( loaded -> EventQueue.invokeLater(
+                () -> action.accept( loaded ) ) );
+    }
+
     public JList<HallOfFameModel.Score> getList() {
         return list;
     }
 
+    public StatisticsPanel getStatistics() {
+        return statistics;
+    }
+
 }
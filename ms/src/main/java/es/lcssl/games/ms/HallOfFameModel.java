@@ -25,25 +25,50 @@
  */
 package es.lcssl.games.ms;
 
-import java.io.BufferedInputStream;
+import java.awt.EventQueue;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.FilenameFilter;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.AbstractCollection;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.RandomAccess;
 import java.util.ResourceBundle;
-import java.util.Scanner;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.IntConsumer;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 
 import javax.swing.AbstractListModel;
 
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
 import static java.text.MessageFormat.format;
 
 /**
@@ -67,14 +92,127 @@ public class HallOfFameModel
             = "{0}x{1}-M={2}-O:(.*)\\.score";
     private static final String SCORE_FILE_FORMAT
             = "{0}x{1}-M={2}-O:{3}.score";
+    private static final String INDEX_FILE_FORMAT
+            = "{0}x{1}-M={2}.index";
+    private static final String SEGMENT_FILE_FORMAT
+            = "{0}x{1}-M={2}.segment";
+    private static final String LOCK_FILE_FORMAT
+            = "{0}x{1}-M={2}.lock";
     private static final String SCORE_LINE_FORMAT
             = "{0}:{1,number,0}:{2,number,0}:{3,number,0}\n";
 
+    /**
+     * Size of the buffer used to read the score files.
+     */
+    private static final int TAIL_BUFFER_SIZE = 8192;
+
+    /**
+     * When {@link #load()} finds at least this number of scores not yet in
+     * the index file, the index is rebuilt.
+     */
+    private static final int REINDEX_THRESHOLD = 1024;
+
+    /**
+     * Number of scores read from the index kept as objects, so repainting
+     * the visible rows doesn't create them again.
+     */
+    private static final int INDEX_CACHE_SIZE = 256;
+
+    /**
+     * Once the score files have been compacted, {@link #load()} compacts
+     * them again when they hold at least this number of bytes.
+     */
+    private static final long COMPACT_THRESHOLD = 256 * 1024;
+
+    /**
+     * Orders scores by date (and then as usual).
+     */
+    private static final Comparator<Score> BY_WHEN
+            = Comparator.comparingLong( Score::getWhen )
+                    .thenComparing( Comparator.naturalOrder() );
+
     private final File baseDirectory;
     private final File scoreFile;
+    private final File indexFile;
+    private final File segmentFile;
+    private final File lockFile;
     private final FilenameFilter filenameFilter;
 
-    ArrayList<Score> scores = new ArrayList<>();
+    /**
+     * Generation of the segment file loaded, {@code 0} if none.
+     */
+    private long generation;
+
+    /**
+     * Maximum number of scores held in memory, {@code 0} for all of them.
+     * The scores beyond the first {@code keep} are only counted, in
+     * {@link #dropped}, to compute the rank of new scores. This is ignored
+     * when an index file is used, as it doesn't hold the scores in memory.
+     */
+    private final int keep;
+
+    /**
+     * Values of the scores not held in memory (the worst ones) when
+     * {@link #keep} is not {@code 0}, so the ranks among them are exact.
+     */
+    private final DroppedScores dropped = new DroppedScores();
+
+    /**
+     * Own scores written to the score file, so we don't count them again
+     * when they are read back and they don't make it into the best
+     * {@link #keep}.
+     */
+    private final Set<Score> written = new TreeSet<>();
+
+    List<Score> scores = new ArrayList<>();
+
+    /**
+     * Number of scores inserted in {@link #scores}, so a replacement of it
+     * prepared meanwhile can tell it misses some.
+     */
+    private int inserted;
+
+    /**
+     * Secondary indexes of {@link #scores}: the best score of each player
+     * (including the scores not held in memory), and the scores sorted by
+     * date (not used with an index file, that has its own).
+     */
+    private final Map<String, Score> best = new HashMap<>();
+    private List<Score> byWhen = new ArrayList<>();
+
+    /**
+     * Distribution of the solve times of all the scores.
+     */
+    private final SolveTimeStatistics statistics = new SolveTimeStatistics();
+
+    private final transient IntConsumer progress;
+
+    /**
+     * Reading state of each score file, indexed by file name. Score files
+     * are only appended to, so we remember how far we have read each one
+     * and only parse the new bytes when the file changes.
+     */
+    private final Map<String, Tail> tails = new HashMap<>();
+
+    private WatchService watchService;
+    private Thread watcher;
+
+    /**
+     * Reading state of one score file.
+     */
+    static class Tail {
+
+        /**
+         * Offset of the first byte not yet parsed (always the beginning of
+         * a line).
+         */
+        long offset;
+
+        /**
+         * Number of lines parsed so far, for diagnostics.
+         */
+        int lineNo;
+    }
 
     public class Score implements Comparable<Score>, Serializable {
 
@@ -83,16 +221,16 @@ public class HallOfFameModel
         private final long when;
         private final long score;
 
+        /* formatted lazily, as only the visible ones are ever shown */
+        private transient String whenText;
+        private transient String scoreText;
+
         private Score( String who, long when, long score ) {
             this.who = who;
             this.when = when;
             this.score = score;
         }
 
-        private Score( long when, long score ) {
-            this( WHO_AM_I, when, score );
-        }
-
         public int getPosition() {
             return position;
         }
@@ -102,11 +240,17 @@ public class HallOfFameModel
         }
 
         public String getWhenAsString() {
-            return new Date( when ).toString();
+            if ( whenText == null ) {
+                whenText = new Date( when ).toString();
+            }
+            return whenText;
         }
 
         public String getScoreAsString() {
-            return Chronograph.toString( score );
+            if ( scoreText == null ) {
+                scoreText = Chronograph.toString( score );
+            }
+            return scoreText;
         }
 
         public long getWhen() {
@@ -171,99 +315,1055 @@ public class HallOfFameModel
     }
 
     public HallOfFameModel( MineSweeper ms, File base_dir ) {
+        this( ms, base_dir, 0 );
+    }
+
+    public HallOfFameModel( MineSweeper ms, File base_dir, int keep ) {
+        this( ms.getRows(), ms.getCols(), ms.getMinesToMark(), base_dir,
+              keep );
+    }
+
+    public HallOfFameModel( int rows, int cols, int mines, File base_dir,
+            int keep ) {
+        this( rows, cols, mines, base_dir, keep, null );
+    }
+
+    /**
+     * Creates the hall of fame of a board configuration and loads it.
+     *
+     * @param rows     the board rows.
+     * @param cols     the board columns.
+     * @param mines    the number of mines on the board.
+     * @param base_dir the directory of the score files.
+     * @param keep     maximum number of scores to hold in memory, or
+     *                 {@code 0} to hold all of them.
+     * @param progress if not {@code null}, called with the percentage of
+     *                 the score files read as each one is, by the thread
+     *                 that (re)loads the scores.
+     */
+    public HallOfFameModel( int rows, int cols, int mines, File base_dir,
+            int keep, IntConsumer progress ) {
 
+        this.keep = keep;
+        this.progress = progress;
         baseDirectory = base_dir;
         scoreFile = new File( baseDirectory,
                 format( SCORE_FILE_FORMAT,
-                        ms.getRows(),
-                        ms.getCols(),
-                        ms.getMinesToMark(),
+                        rows,
+                        cols,
+                        mines,
                         WHO_AM_I ) );
+        indexFile = new File( baseDirectory,
+                format( INDEX_FILE_FORMAT,
+                        rows,
+                        cols,
+                        mines ) );
+        segmentFile = new File( baseDirectory,
+                format( SEGMENT_FILE_FORMAT,
+                        rows,
+                        cols,
+                        mines ) );
+        lockFile = new File( baseDirectory,
+                format( LOCK_FILE_FORMAT,
+                        rows,
+                        cols,
+                        mines ) );
         filenameFilter = (d, n) -> Pattern.compile(
                 format(
                         SEARCH_SCORE_PATTERN,
-                        ms.getRows(),
-                        ms.getCols(),
-                        ms.getMinesToMark() ) )
+                        rows,
+                        cols,
+                        mines ) )
                 .matcher( n ).matches();
 
-        LOG.info( format(
+        LOG.config( () -> format(
                 "baseDirectory = {0}",
                 baseDirectory ) );
-        LOG.info( format(
+        LOG.config( () -> format(
                 "scoreFile = {0}",
                 scoreFile ) );
         load();
     }
 
-    public final void load() {
+    /**
+     * Loads the scores of this board configuration. If there's an index
+     * file, it is mapped in memory and only the lines appended to the
+     * score files after it was written are parsed; if those are too many,
+     * the index is rebuilt. Otherwise, the compacted segment (if any) is
+     * read and merged with the score files. Once compacted, the score
+     * files are compacted again when they grow too much.
+     */
+    public final synchronized void load() {
 
-        scores = new ArrayList<>();
+        long start_time = System.nanoTime();
+        ArrayList<Score> segment = new ArrayList<>(),
+                loaded = new ArrayList<>();
+        ScoreIndex index = null;
+        boolean reindex = false;
+        tails.clear();
+        dropped.clear();
+        best.clear();
+
+        try {
+            generation = ScoreSegment.generation( segmentFile );
+        } catch ( IOException ex ) {
+            LOG.warning( () -> format(
+                    INTL.getString( "CANNOT_READ_SEGMENT" ),
+                    segmentFile,
+                    ex ) );
+            generation = 0;
+        }
+
+        if ( indexFile.exists() ) {
+            try {
+                index = ScoreIndex.open( indexFile );
+                if ( index.getGeneration() != generation ) {
+                    LOG.info( () -> format(
+                            INTL.getString( "INDEX_STALE" ),
+                            indexFile ) );
+                    index = null;
+                    reindex = true;
+                } else {
+                    for ( Map.Entry<String, Tail> e
+                            : index.getTails().entrySet() ) {
+                        Tail tail = new Tail();
+                        tail.offset = e.getValue().offset;
+                        tail.lineNo = e.getValue().lineNo;
+                        tails.put( e.getKey(), tail );
+                    }
+                }
+            } catch ( IOException ex ) {
+                LOG.warning( () -> format(
+                        INTL.getString( "CANNOT_READ_INDEX" ),
+                        indexFile,
+                        ex ) );
+                reindex = true;
+            }
+        }
+
+        /* without index, hold only the best scores if told so */
+        TopScores top = index == null && keep > 0 ? new TopScores() : null;
+        Collection<Score> from_segment = top != null ? top : segment,
+                from_files = top != null ? top : loaded;
+
+        if ( index == null && generation != 0 ) {
+            LOG.info( () -> format( INTL.getString(
+                    "READING_FROM_FILE" ),
+                    segmentFile.getName() ) );
+            try {
+                ScoreSegment.read( segmentFile, (who, when, score)
+                        -> from_segment.add(
+                                new Score( who, when, score ) ) );
+            } catch ( IOException ex ) {
+                LOG.warning( () -> format(
+                        INTL.getString( "CANNOT_READ_SEGMENT" ),
+                        segmentFile,
+                        ex ) );
+            }
+        }
 
         File[] files = baseDirectory.listFiles( filenameFilter );
         if ( files != null ) {
+            long total = 0, done = 0;
             for ( File f : files ) {
-                LOG.info( () -> format( INTL.getString(
-                        "READING_FROM_FILE" ),
-                        f.getName() ) );
-                try ( Scanner in = new Scanner(
-                        new BufferedInputStream(
-                                new FileInputStream( f ) ) ) ) {
-                    final int n_args = 4;
-                    int line_no = 0;
-                    while ( in.hasNext() ) {
-                        String line = in.nextLine();
-                        final int ln = ++line_no;
-                        String[] args
-                                = line.split( "[ \t]*:[ \t]*" );
-                        if ( args.length < n_args ) {
-                            LOG.warning( () -> format(
-                                    INTL.getString(
-                                            "BAD_SYNTAX" ),
-                                    ln,
-                                    line ) );
-                            continue;
-                        }
-                        try {
-                            Score score = new Score(
-                                    args[ 0 ],
-                                    Long.parseLong( args[ 1 ] ),
-                                    Long.parseLong( args[ 2 ] ) );
-                            int hash = score.hashCode(),
-                                    hash_read = Integer.parseInt(
-                                            args[ 3 ] );
-                            if ( hash != hash_read ) {
-                                LOG.warning( () -> format(
-                                        INTL.getString(
-                                                "BAD_HASH" ),
-                                        ln,
-                                        hash_read,
-                                        hash ) );
-                            } else {
-                                scores.add( score );
-                            }
-                        } catch ( NumberFormatException ex ) {
-                            LOG.warning( () -> format(
-                                    INTL.getString( "NUMBER_FORMAT" ),
-                                    ln,
-                                    line,
-                                    ex ) );
-                        }
-                    }
-                } catch ( FileNotFoundException ex ) {
+                total += unread( f );
+            }
+            for ( File f : files ) {
+                done += unread( f );
+                tail( f, from_files );
+                if ( progress != null ) {
+                    progress.accept(
+                            (int) (100 * done / Math.max( total, 1 )) );
+                }
+            }
+        }
+        if ( progress != null ) {
+            progress.accept( 100 );
+        }
+        loaded.sort( Score::compareTo );
+        if ( index != null ) {
+            scores = new IndexedScores( index, loaded );
+            reindex = loaded.size() >= REINDEX_THRESHOLD;
+        } else if ( top != null ) {
+            scores = top.done();
+            reindex = false;
+        } else {
+            scores = mergeSorted( segment, loaded );
+        }
+        indexScores();
+        long load_time = System.nanoTime() - start_time;
+        GameMetrics.get().hallOfFameLoad( load_time );
+        Trace.record( Trace.Event.SCORES_LOADED, scores.size(), load_time );
+
+        if ( generation != 0 && pending( files ) >= COMPACT_THRESHOLD ) {
+            compact();
+        } else if ( reindex ) {
+            buildIndex();
+        }
+    }
+
+    /**
+     * @return the number of bytes of {@code f} not yet read.
+     */
+    private long unread( File f ) {
+        Tail tail = tails.get( f.getName() );
+        return Math.max( f.length() - (tail == null ? 0 : tail.offset), 0 );
+    }
+
+    /**
+     * @return the number of bytes read from the score files that
+     *         {@link #compact()} can empty.
+     */
+    private long pending( File[] files ) {
+
+        long total = 0;
+        if ( files != null ) {
+            for ( File f : files ) {
+                Tail tail = tails.get( f.getName() );
+                if ( tail != null && f.canWrite() ) {
+                    total += tail.offset;
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Merges two sorted lists of scores, dropping duplicates.
+     */
+    private static ArrayList<Score> mergeSorted(
+            List<Score> a, List<Score> b ) {
+
+        ArrayList<Score> out = new ArrayList<>( a.size() + b.size() );
+        int i = 0, j = 0;
+        while ( i < a.size() || j < b.size() ) {
+            Score next;
+            if ( j == b.size() ) {
+                next = a.get( i++ );
+            } else if ( i == a.size() ) {
+                next = b.get( j++ );
+            } else {
+                int cmp = a.get( i ).compareTo( b.get( j ) );
+                next = cmp <= 0 ? a.get( i++ ) : b.get( j++ );
+                if ( cmp == 0 ) {
+                    j++;
+                }
+            }
+            if ( out.isEmpty()
+                    || out.get( out.size() - 1 ).compareTo( next ) != 0 ) {
+                out.add( next );
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Compacts the scores of this board configuration: the segment file
+     * and all the score files are merged into a new, sorted and compressed
+     * segment file, and the score files we can write to are emptied, so
+     * they only hold the scores added after this. The score files are
+     * locked meanwhile, so scores added by other players are not lost, and
+     * so is the lock file of the configuration, so compactions of other
+     * processes wait for this one and then read the segment it wrote.
+     *
+     * <p>
+     * Like {@link #load()}, this replaces the contents of the model (with
+     * the same scores, plus the ones not read yet), and rebuilds the index
+     * file if there is one.
+     */
+    public final synchronized void compact() {
+
+        File[] files = baseDirectory.listFiles( filenameFilter );
+        if ( files == null ) {
+            return;
+        }
+        Map<File, FileChannel> channels = new HashMap<>();
+        try {
+            /* first the lock file, so two compactions never hold some
+             * score files each, waiting for the others */
+            FileChannel lock = FileChannel.open( lockFile.toPath(),
+                                                 StandardOpenOption.CREATE,
+                                                 StandardOpenOption.WRITE );
+            channels.put( lockFile, lock );
+            lock.lock();
+            ArrayList<Score> segment = new ArrayList<>(),
+                    loaded = new ArrayList<>();
+            Map<String, Tail> read = new HashMap<>();
+            for ( File f : files ) {
+                boolean writable = f.canWrite();
+                FileChannel ch = writable
+                        ? FileChannel.open( f.toPath(),
+                                            StandardOpenOption.READ,
+                                            StandardOpenOption.WRITE )
+                        : FileChannel.open( f.toPath(),
+                                            StandardOpenOption.READ );
+                channels.put( f, ch );
+                ch.lock( 0, Long.MAX_VALUE, !writable );
+                Tail tail = new Tail();
+                tail( f, ch, tail, loaded );
+                read.put( f.getName(), tail );
+            }
+            /* only now, with everything locked, the segment is the one
+             * the score files were emptied for */
+            long old_generation = 0;
+            if ( segmentFile.exists() ) {
+                old_generation = ScoreSegment.read( segmentFile,
+                        (who, when, score)
+                        -> segment.add( new Score( who, when, score ) ) );
+            }
+            loaded.sort( Score::compareTo );
+            ArrayList<Score> all = mergeSorted( segment, loaded );
+
+            long new_generation = Math.max( System.currentTimeMillis(),
+                    Math.max( generation, old_generation ) + 1 );
+            ScoreSegment.write( segmentFile, all, new_generation );
+            generation = new_generation;
+
+            /* now that they are safe in the segment, empty the score
+             * files, keeping any incomplete last line */
+            int emptied = 0;
+            for ( File f : files ) {
+                if ( !f.canWrite() ) {
+                    continue;
+                }
+                FileChannel ch = channels.get( f );
+                Tail tail = read.get( f.getName() );
+                ByteBuffer rest = ByteBuffer.allocate(
+                        (int) (ch.size() - tail.offset) );
+                while ( rest.hasRemaining()
+                        && ch.read( rest, tail.offset + rest.position() )
+                        > 0 ) {
+                    /* read it all */
+                }
+                rest.flip();
+                ch.truncate( 0 );
+                ch.write( rest, 0 );
+                tail.offset = 0;
+                tail.lineNo = 0;
+                emptied++;
+            }
+            tails.clear();
+            tails.putAll( read );
+            dropped.clear();
+            best.clear();
+            if ( keep > 0 ) {
+                TopScores top = new TopScores();
+                top.addAll( all );
+                scores = top.done();
+            } else {
+                scores = all;
+            }
+            indexScores();
+
+            final int n_files = emptied;
+            LOG.info( () -> format(
+                    INTL.getString( "COMPACTED" ),
+                    segmentFile,
+                    all.size(),
+                    n_files ) );
+            if ( indexFile.exists() ) {
+                writeIndex( all );
+            }
+        } catch ( IOException | OverlappingFileLockException ex ) {
+            /* the latter, if another model of this process is compacting
+             * the same configuration */
+            LOG.warning( () -> format(
+                    INTL.getString( "CANNOT_COMPACT" ),
+                    segmentFile,
+                    ex ) );
+        } finally {
+            /* closing the channels releases the locks */
+            for ( FileChannel ch : channels.values() ) {
+                try {
+                    ch.close();
+                } catch ( IOException ex ) {
                     LOG.warning( () -> format(
-                            INTL.getString(
-                                    "FILE_NOT_FOUND" ),
-                            f,
+                            INTL.getString( "CANNOT_COMPACT" ),
+                            segmentFile,
                             ex ) );
                 }
-                scores.sort( Score::compareTo );
-                int pos = 1;
-                for ( Score s : scores ) {
-                    s.setPosition( pos++ );
+            }
+        }
+    }
+
+    /**
+     * Writes the index file of this board configuration with the scores
+     * currently loaded, and maps it in memory. Once the index file exists,
+     * {@link #load()} uses it.
+     */
+    public final synchronized void buildIndex() {
+
+        if ( dropped.size() > 0 ) {
+            /* we don't have all the scores */
+            LOG.warning( () -> format(
+                    INTL.getString( "CANNOT_INDEX_DROPPED" ),
+                    indexFile,
+                    dropped.size() ) );
+            return;
+        }
+        writeIndex( scores );
+    }
+
+    private void writeIndex( List<Score> sorted ) {
+
+        try {
+            ScoreIndex.write( indexFile, sorted, tails, generation );
+            replaceScores( new IndexedScores(
+                    ScoreIndex.open( indexFile ),
+                    Collections.emptyList() ) );
+            LOG.info( () -> format(
+                    INTL.getString( "INDEX_WRITTEN" ),
+                    indexFile,
+                    sorted.size() ) );
+        } catch ( IOException ex ) {
+            LOG.warning( () -> format(
+                    INTL.getString( "CANNOT_WRITE_INDEX" ),
+                    indexFile,
+                    ex ) );
+        }
+    }
+
+    /**
+     * Replaces {@link #scores} with {@code replacement}, that holds the
+     * same scores, and tells the listeners. The list of a model being
+     * shown only changes in the event dispatch thread, so if there are
+     * listeners it is replaced there, later, and not at all if a score
+     * is inserted before, as the replacement would miss it.
+     */
+    private void replaceScores( List<Score> replacement ) {
+
+        if ( getListDataListeners().length == 0
+                || EventQueue.isDispatchThread() ) {
+            swapScores( replacement, inserted );
+            return;
+        }
+        int seen = inserted;
+        EventQueue.invokeLater( () -> swapScores( replacement, seen ) );
+    }
+
+    private synchronized void swapScores( List<Score> replacement,
+            int seen ) {
+
+        if ( inserted != seen ) {
+            return;
+        }
+        int size = Math.max( scores.size(), replacement.size() );
+        scores = replacement;
+        indexScores();
+        if ( size > 0 ) {
+            fireContentsChanged( this, 0, size - 1 );
+        }
+    }
+
+    /**
+     * Collects the best {@link #keep} scores added to it, counting the
+     * values of the others in {@link #dropped}. Duplicates are dropped
+     * when they are among the best ones.
+     */
+    private class TopScores extends AbstractCollection<Score> {
+
+        private final TreeSet<Score> top = new TreeSet<>();
+        private int nWorse;
+
+        @Override
+        public boolean add( Score score ) {
+            noteBest( score );
+            if ( top.size() < keep ) {
+                return top.add( score );
+            }
+            Score last = top.last();
+            int cmp = score.compareTo( last );
+            if ( cmp == 0 ) {
+                return false;
+            }
+            if ( cmp < 0 ) {
+                if ( !top.add( score ) ) {
+                    return false;
                 }
+                /* it displaces the last one */
+                top.pollLast();
+                score = last;
+            }
+            dropped.add( score.getScore() );
+            nWorse++;
+            return true;
+        }
+
+        @Override
+        public Iterator<Score> iterator() {
+            return top.iterator();
+        }
+
+        @Override
+        public int size() {
+            return top.size() + nWorse;
+        }
+
+        /**
+         * @return the best scores, sorted.
+         */
+        List<Score> done() {
+            return new ArrayList<>( top );
+        }
+    }
+
+    /**
+     * @return the number of scores not held in memory with a value up to
+     *         {@code score}.
+     */
+    private int upperBound( long score ) {
+        return dropped.countUpTo( score );
+    }
+
+    /**
+     * @return the total number of scores, including the ones not held in
+     *         memory (see {@link #getSize()}).
+     */
+    public synchronized int getTotalSize() {
+        return scores.size() + dropped.size();
+    }
+
+    /**
+     * Builds the secondary indexes and the {@link #statistics} of
+     * {@link #scores} (and the dropped ones).
+     */
+    private void indexScores() {
+
+        statistics.clear();
+        dropped.addTo( statistics );
+        if ( scores instanceof IndexedScores ) {
+            byWhen = null;
+            ((IndexedScores) scores).note();
+            return;
+        }
+        for ( Score s : scores ) {
+            note( s );
+        }
+        byWhen = new ArrayList<>( scores );
+        byWhen.sort( BY_WHEN );
+    }
+
+    /**
+     * Accounts a new score in {@link #best} and {@link #statistics}.
+     */
+    private void note( Score score ) {
+        noteBest( score );
+        statistics.add( score.getScore() );
+    }
+
+    private void noteBest( Score score ) {
+        best.merge( score.getWho(), score,
+                    ( a, b ) -> a.compareTo( b ) <= 0 ? a : b );
+    }
+
+    /**
+     * @return a copy of the statistics of the solve times of all the
+     *         scores (including the ones not held in memory).
+     */
+    public synchronized SolveTimeStatistics getStatistics() {
+        return new SolveTimeStatistics( statistics );
+    }
+
+    /**
+     * @return the number of scores with a time better than {@code time}.
+     */
+    private int countBetter( long time ) {
+
+        int lft = 0, rgt = scores.size();
+        while ( lft < rgt ) {
+            int mid = (lft + rgt) >>> 1;
+            if ( scores.get( mid ).getScore() < time ) {
+                lft = mid + 1;
+            } else {
+                rgt = mid;
             }
         }
+        return lft + upperBound( time - 1 );
+    }
+
+    /**
+     * @param time a time, in milliseconds.
+     * @return the position a score with that time would get (the number of
+     *         better scores plus one).
+     */
+    public synchronized int getRank( long time ) {
+        return countBetter( time ) + 1;
+    }
+
+    /**
+     * @param time a time, in milliseconds.
+     * @return the percentage of the scores with a better time, so a
+     *         result of {@code 10.0} means {@code time} is in the top 10%.
+     */
+    public synchronized double getPercentile( long time ) {
+        int total = getTotalSize();
+        return total == 0 ? 0.0 : 100.0 * countBetter( time ) / total;
+    }
+
+    /**
+     * @return the best score of each player, indexed by player name.
+     */
+    public synchronized Map<String, Score> getBestByPlayer() {
+        return new HashMap<>( best );
+    }
+
+    /**
+     * @return the best score of {@code who}, or {@code null} if it has
+     *         none.
+     */
+    public synchronized Score getBest( String who ) {
+        return best.get( who );
+    }
+
+    /**
+     * Returns the scores recorded in a range of dates, sorted by date.
+     * Only the scores held in memory are considered (see
+     * {@link #getTotalSize()}).
+     *
+     * @param from first date (in milliseconds since the epoch) included.
+     * @param to   first date not included.
+     * @return the scores.
+     */
+    public synchronized List<Score> getScoresBetween( long from, long to ) {
+
+        if ( scores instanceof IndexedScores ) {
+            return ((IndexedScores) scores).between( from, to );
+        }
+        return new ArrayList<>( byWhen.subList(
+                whenRank( from ), Math.max( whenRank( from ),
+                                            whenRank( to ) ) ) );
+    }
+
+    /**
+     * @return the number of scores in {@link #byWhen} before {@code when}.
+     */
+    private int whenRank( long when ) {
+
+        int lft = 0, rgt = byWhen.size();
+        while ( lft < rgt ) {
+            int mid = (lft + rgt) >>> 1;
+            if ( byWhen.get( mid ).getWhen() < when ) {
+                lft = mid + 1;
+            } else {
+                rgt = mid;
+            }
+        }
+        return lft;
+    }
+
+    /**
+     * Sorted list of scores backed by a {@link ScoreIndex} plus the scores
+     * not yet in it. Only the scores actually requested are created from
+     * the index, so large score histories don't need to be held in memory.
+     */
+    private class IndexedScores
+            extends AbstractList<Score>
+            implements RandomAccess {
+
+        private final ScoreIndex base;
+
+        /**
+         * Scores not in the index, sorted.
+         */
+        private final ArrayList<Score> overlay = new ArrayList<>();
+
+        /**
+         * {@code ranks[k]} is the number of index records that sort
+         * before {@code overlay.get(k)}, so that element is at position
+         * {@code k + ranks[k]} of the whole list.
+         */
+        private int[] ranks = new int[ 16 ];
+
+        private final Score[] cache = new Score[ INDEX_CACHE_SIZE ];
+        private final int[] cached = new int[ INDEX_CACHE_SIZE ];
+
+        IndexedScores( ScoreIndex base, List<Score> sorted ) {
+            this.base = base;
+            Arrays.fill( cached, -1 );
+            for ( Score s : sorted ) {
+                if ( !base.contains( s ) ) {
+                    add( overlay.size() + base.rank( s ), s );
+                }
+            }
+        }
+
+        void note() {
+            for ( int i = 0; i < base.size(); i++ ) {
+                statistics.add( base.getScore( i ) );
+            }
+            int[] first = base.bestOfEachName();
+            for ( int i : first ) {
+                if ( i >= 0 ) {
+                    HallOfFameModel.this.noteBest( new Score(
+                            base.getWho( i ),
+                            base.getWhen( i ),
+                            base.getScore( i ) ) );
+                }
+            }
+            for ( Score s : overlay ) {
+                HallOfFameModel.this.note( s );
+            }
+        }
+
+        List<Score> between( long from, long to ) {
+            ArrayList<Score> res = new ArrayList<>();
+            for ( int k = base.whenRank( from ); k < base.size(); k++ ) {
+                int i = base.byWhen( k );
+                if ( base.getWhen( i ) >= to ) {
+                    break;
+                }
+                res.add( new Score(
+                        base.getWho( i ),
+                        base.getWhen( i ),
+                        base.getScore( i ) ) );
+            }
+            /* the overlay is small */
+            for ( Score s : overlay ) {
+                if ( s.getWhen() >= from && s.getWhen() < to ) {
+                    res.add( s );
+                }
+            }
+            res.sort( BY_WHEN );
+            return res;
+        }
+
+        @Override
+        public Score get( int index ) {
+            if ( index < 0 || index >= size() ) {
+                throw new IndexOutOfBoundsException(
+                        Integer.toString( index ) );
+            }
+            /* first overlay element at or after index */
+            int lft = 0, rgt = overlay.size();
+            while ( lft < rgt ) {
+                int mid = (lft + rgt) >>> 1;
+                if ( mid + ranks[ mid ] < index ) {
+                    lft = mid + 1;
+                } else {
+                    rgt = mid;
+                }
+            }
+            if ( lft < overlay.size() && lft + ranks[ lft ] == index ) {
+                return overlay.get( lft );
+            }
+            /* lft overlay elements come before it */
+            int i = index - lft,
+                    slot = i % INDEX_CACHE_SIZE;
+            if ( cached[ slot ] != i ) {
+                cache[ slot ] = new Score(
+                        base.getWho( i ),
+                        base.getWhen( i ),
+                        base.getScore( i ) );
+                cached[ slot ] = i;
+            }
+            return cache[ slot ];
+        }
+
+        @Override
+        public int size() {
+            return base.size() + overlay.size();
+        }
+
+        /**
+         * Adds a score not in the index. {@code index} must be its sorted
+         * position, as returned by a binary search.
+         */
+        @Override
+        public void add( int index, Score score ) {
+            int rank = base.rank( score ),
+                    k = index - rank,
+                    n = overlay.size();
+            if ( n == ranks.length ) {
+                ranks = Arrays.copyOf( ranks, 2 * n );
+            }
+            System.arraycopy( ranks, k, ranks, k + 1, n - k );
+            ranks[ k ] = rank;
+            overlay.add( k, score );
+            modCount++;
+        }
+    }
+
+    /**
+     * Parses the complete lines appended to file {@code f} since the last
+     * time it was read, adding the valid scores to {@code out}. An
+     * incomplete last line is left for the next call, as its writer has
+     * not finished it yet.
+     *
+     * @param f   the score file to read.
+     * @param out where to add the scores read.
+     */
+    private void tail( File f, Collection<Score> out ) {
+
+        Tail tail = tails.computeIfAbsent( f.getName(), n -> new Tail() );
+        try ( FileChannel in = FileChannel.open(
+                f.toPath(), StandardOpenOption.READ ) ) {
+            tail( f, in, tail, out );
+            Trace.record( Trace.Event.SCORES_READ,
+                          tail.lineNo, tail.offset );
+        } catch ( NoSuchFileException ex ) {
+            LOG.warning( () -> format(
+                    INTL.getString(
+                            "FILE_NOT_FOUND" ),
+                    f,
+                    ex ) );
+        } catch ( IOException ex ) {
+            LOG.warning( () -> format(
+                    INTL.getString(
+                            "CANNOT_READ_SCORE" ),
+                    f,
+                    ex ) );
+        }
+    }
+
+    private void tail( File f, FileChannel in, Tail tail,
+            Collection<Score> out ) throws IOException {
+
+        if ( in.size() < tail.offset ) {
+            /* the file has been truncated, read it again */
+            LOG.info( () -> format( INTL.getString(
+                    "FILE_TRUNCATED" ),
+                    f.getName() ) );
+            tail.offset = 0;
+            tail.lineNo = 0;
+        }
+        in.position( tail.offset );
+        ByteBuffer buffer = ByteBuffer.allocate( TAIL_BUFFER_SIZE );
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        long pos = tail.offset;
+        while ( in.read( buffer ) > 0 ) {
+            buffer.flip();
+            while ( buffer.hasRemaining() ) {
+                byte b = buffer.get();
+                pos++;
+                if ( b != '\n' ) {
+                    line.write( b );
+                    continue;
+                }
+                Score score = parse( f, ++tail.lineNo,
+                                     line.toString().trim() );
+                if ( score != null ) {
+                    out.add( score );
+                }
+                line.reset();
+                tail.offset = pos;
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Parses one line of a score file.
+     *
+     * @return the score read, or {@code null} if the line is not valid.
+     */
+    private Score parse( File f, int ln, String line ) {
+
+        final int n_args = 4;
+
+        if ( line.isEmpty() ) {
+            return null;
+        }
+        String[] args
+                = line.split( "[ \t]*:[ \t]*" );
+        if ( args.length < n_args ) {
+            LOG.warning( () -> format(
+                    INTL.getString(
+                            "BAD_SYNTAX" ),
+                    ln,
+                    line ) );
+            return null;
+        }
+        try {
+            Score score = new Score(
+                    args[ 0 ],
+                    Long.parseLong( args[ 1 ] ),
+                    Long.parseLong( args[ 2 ] ) );
+            int hash = score.hashCode(),
+                    hash_read = Integer.parseInt(
+                            args[ 3 ] );
+            if ( hash != hash_read ) {
+                LOG.warning( () -> format(
+                        INTL.getString(
+                                "BAD_HASH" ),
+                        ln,
+                        hash_read,
+                        hash ) );
+                return null;
+            }
+            return score;
+        } catch ( NumberFormatException ex ) {
+            LOG.warning( () -> format(
+                    INTL.getString( "NUMBER_FORMAT" ),
+                    ln,
+                    line,
+                    ex ) );
+            return null;
+        }
+    }
+
+    /**
+     * Starts a background thread that watches the base directory for new
+     * or modified score files of this board configuration, and merges the
+     * newly appended scores into the model (in the event dispatch thread).
+     * Calling it again while already watching has no effect.
+     */
+    public synchronized void startWatching() {
+
+        if ( watcher != null ) {
+            return;
+        }
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            baseDirectory.toPath().register(
+                    watchService, ENTRY_CREATE, ENTRY_MODIFY );
+        } catch ( IOException ex ) {
+            LOG.warning( () -> format(
+                    INTL.getString( "CANNOT_WATCH" ),
+                    baseDirectory,
+                    ex ) );
+            return;
+        }
+        watcher = new Thread( this::watch,
+                              "watcher-" + baseDirectory.getName() );
+        watcher.setDaemon( true );
+        watcher.start();
+        LOG.info( () -> format(
+                INTL.getString( "WATCHING" ),
+                baseDirectory ) );
+    }
+
+    /**
+     * Stops the watching thread started by {@link #startWatching()}.
+     */
+    public synchronized void stopWatching() {
+
+        if ( watcher == null ) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch ( IOException ex ) {
+            LOG.warning( () -> format(
+                    INTL.getString( "CANNOT_WATCH" ),
+                    baseDirectory,
+                    ex ) );
+        }
+        watcher.interrupt();
+        watcher = null;
+        watchService = null;
+    }
+
+    private void watch() {
+
+        WatchService ws;
+        synchronized ( this ) {
+            ws = watchService;
+        }
+        try {
+            for ( ;; ) {
+                WatchKey key = ws.take();
+                Set<File> changed = new LinkedHashSet<>();
+                for ( WatchEvent<?> ev : key.pollEvents() ) {
+                    if ( ev.kind() == OVERFLOW ) {
+                        /* we lost events, check all the files */
+                        File[] files = baseDirectory.listFiles(
+                                filenameFilter );
+                        if ( files != null ) {
+                            changed.addAll( Arrays.asList( files ) );
+                        }
+                        continue;
+                    }
+                    String name = ((Path) ev.context()).toString();
+                    if ( filenameFilter.accept( baseDirectory, name ) ) {
+                        changed.add( new File( baseDirectory, name ) );
+                    }
+                }
+                List<Score> batch = new ArrayList<>();
+                synchronized ( this ) {
+                    for ( File f : changed ) {
+                        tail( f, batch );
+                    }
+                }
+                if ( !batch.isEmpty() ) {
+                    EventQueue.invokeLater( () -> merge( batch ) );
+                }
+                if ( !key.reset() ) {
+                    /* directory is no longer accessible */
+                    LOG.warning( () -> format(
+                            INTL.getString( "CANNOT_WATCH" ),
+                            baseDirectory,
+                            key ) );
+                    return;
+                }
+            }
+        } catch ( InterruptedException | ClosedWatchServiceException ex ) {
+            LOG.fine( () -> format(
+                    INTL.getString( "STOP_WATCHING" ),
+                    baseDirectory ) );
+        }
+    }
+
+    /**
+     * Merges a batch of scores into the model, ignoring the ones already
+     * present (e.g. the ones we wrote ourselves). It runs in the event
+     * dispatch thread, so the list changes where it is shown, but with
+     * the lock held, as other threads may be loading, compacting or
+     * indexing the model meanwhile.
+     */
+    private synchronized void merge( List<Score> batch ) {
+
+        int first = scores.size();
+        for ( Score s : batch ) {
+            if ( written.remove( s ) ) {
+                /* we already have it */
+                continue;
+            }
+            int where = insert( s );
+            if ( where >= 0 && where < first ) {
+                first = where;
+            }
+        }
+        int size = scores.size();
+        if ( first < size ) {
+            fireContentsChanged( this, first, size - 1 );
+        }
+    }
+
+    /**
+     * Inserts a score in its sorted place.
+     *
+     * @return the index where it was inserted, or -1 if it was already
+     *         there or it didn't make it into the best {@link #keep}.
+     */
+    private int insert( Score score ) {
+
+        int where = Collections.binarySearch( scores, score );
+        if ( where >= 0 ) {
+            return -1;
+        }
+        where = -where - 1;
+        scores.add( where, score );
+        inserted++;
+        score.setPosition( where + 1 );
+        note( score );
+        if ( byWhen != null ) {
+            byWhen.add( -Collections.binarySearch( byWhen, score, BY_WHEN )
+                    - 1, score );
+        }
+        if ( keep > 0 && !(scores instanceof IndexedScores)
+                && scores.size() > keep ) {
+            /* drop the worst one, it may be this */
+            Score last = scores.remove( scores.size() - 1 );
+            byWhen.remove( Collections.binarySearch( byWhen, last, BY_WHEN ) );
+            dropped.add( last.getScore() );
+            if ( last == score ) {
+                /* ties with it go before, as it is newer */
+                score.setPosition( scores.size() + upperBound(
+                        score.getScore() ) );
+                return -1;
+            }
+        }
+        return where;
     }
 
     @Override
@@ -273,46 +1373,70 @@ public class HallOfFameModel
 
     @Override
     public Score getElementAt( int index ) {
-        return scores.get( index );
+        /* positions change as scores are inserted, set it on access */
+        Score s = scores.get( index );
+        s.setPosition( index + 1 );
+        return s;
     }
 
     public Score addScore( long when, long score ) {
-        Score new_score = new Score( when, score );
-        int lft = 0, rgt = scores.size();
-        while ( rgt - lft > 1 ) {
-            int mid = (lft + rgt) / 2;
-            if ( new_score.compareTo( scores.get( mid ) ) < 0 ) {
-                rgt = mid;
-            } else {
-                lft = mid;
-            }
+        return addScore( WHO_AM_I, when, score );
+    }
+
+    /**
+     * Adds the score of a player other than the user running the program
+     * (the one of a {@link GameServer} session).
+     */
+    public synchronized Score addScore( String who, long when, long score ) {
+        Score new_score = new Score( who, when, score );
+        written.add( new_score );
+        int where = insert( new_score );
+        if ( where >= 0 ) {
+            fireContentsChanged( this, where, scores.size() - 1 );
         }
-        if ( lft == rgt ) {
-            /* scores is empty */
-            new_score.setPosition( 1 );
-            scores.add( 0, new_score );
-            fireIntervalAdded( this, 0, 0 );
-        } else {
-            /* not empty */
-            int cmp = new_score.compareTo( scores.get( lft ) );
-            if ( cmp < 0 ) {
-                /* less than */
-                addTheScore( lft, new_score );
-            } else if ( cmp > 0 ) {
-                /* larger */
-                addTheScore( rgt, new_score );
-            }
-            /* else nothing */
-        }
-        try (OutputStreamWriter out
-                = new FileWriter(scoreFile,true ))
-        {
-            out.write(format(
+        /* else nothing */
+        append( new_score );
+        return new_score;
+    }
+
+    /**
+     * Writes the score of a player to the score file, without adding it
+     * to the model: if the model is {@link #startWatching() watching} the
+     * score files, it reads it back from there and merges it in the event
+     * dispatch thread, as the scores of other processes. This is the way
+     * for other threads (as the recorder of a {@link GameServer}) to add
+     * scores to a model that may be shown.
+     *
+     * @return the score written, with the position it will get if no
+     *         better one comes before.
+     */
+    public synchronized Score appendScore( String who, long when,
+            long score ) {
+        Score new_score = new Score( who, when, score );
+        new_score.setPosition( getRank( score ) );
+        append( new_score );
+        return new_score;
+    }
+
+    /**
+     * Appends a score to the score file.
+     */
+    private void append( Score new_score ) {
+        long start_time = System.nanoTime();
+        /* lock the file, so we don't write while it is being compacted */
+        try ( FileChannel out = FileChannel.open(
+                scoreFile.toPath(),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND ) ) {
+            /* closing the channel releases the lock */
+            out.lock();
+            out.write( ByteBuffer.wrap( format(
                     SCORE_LINE_FORMAT,
                     new_score.getWho(),
                     new_score.getWhen(),
                     new_score.getScore(),
-                    new_score.hashCode() ));
+                    new_score.hashCode() ).getBytes() ) );
         } catch ( IOException ex ) {
             LOG.warning( () -> format(
                     INTL.getString(
@@ -320,16 +1444,8 @@ public class HallOfFameModel
                     scoreFile,
                     ex ) );
         }
-
-        return new_score;
-    }
-
-    private void addTheScore( int where, Score score ) {
-        scores.add( where, score );
-        int size = scores.size();
-        for ( int i = where, pos = i + 1; i < size; i++, pos++ ) {
-            scores.get( i ).setPosition( pos );
-        }
-        fireContentsChanged( this, where, size - 1 );
+        GameMetrics.get().hallOfFameWrite( System.nanoTime() - start_time );
+        Trace.record( Trace.Event.SCORE_ADDED,
+                      new_score.getPosition(), new_score.getScore() );
     }
 }
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2023, lcu
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package es.lcssl.games.ms;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import static es.lcssl.games.ms.MineSweeper.ALREADY_OPENED;
+import static es.lcssl.games.ms.MineSweeper.MARK_MASK;
+import static es.lcssl.games.ms.MineSweeper.MINES_MASK;
+
+/**
+ * Finds cells that are safe to uncover, for hints. It keeps what it
+ * deduced from the last {@link BoardSnapshot} it was given (the cells
+ * known to be safe, and those known to hold a mine) and, given a newer
+ * one, only looks again at the uncovered cells around the cells changed
+ * since: the rest of the deductions still hold. So the cost of a hint
+ * depends on the moves made since the last one, not on the size of the
+ * board.
+ *
+ * <p>
+ * The deductions use the mine count of each uncovered cell alone: if
+ * its mines are already known, the rest of its covered neighbours are
+ * safe; if its covered neighbours not known to be safe are as many as
+ * its mines, they all are mines. The flags of the player are not
+ * trusted.
+ *
+ * <p>
+ * This class is thread safe.
+ *
+ * @author lcu
+ */
+final class HintCache {
+
+    private BoardSnapshot last;
+    private final BitSet safe = new BitSet(), mines = new BitSet();
+
+    /**
+     * Uncovered cells to look at again, in {@link #queue} and marked in
+     * {@link #queued}.
+     */
+    private int[] queue = new int[ 64 ];
+    private int queueSize;
+    private final BitSet queued = new BitSet();
+    private final int[] around = new int[ BoardSnapshot.MAX_NEIGHBOURS ],
+            unknown = new int[ BoardSnapshot.MAX_NEIGHBOURS ],
+            near = new int[ BoardSnapshot.MAX_NEIGHBOURS ];
+
+    /**
+     * Finds a safe cell.
+     *
+     * @param now the state of the board.
+     * @return the index (as given by {@link BoardSnapshot}) of a covered,
+     *         not flagged, cell that has no mine, or {@code -1} if none
+     *         can be deduced.
+     */
+    synchronized int hint( BoardSnapshot now ) {
+        update( now );
+        for ( int i = safe.nextSetBit( 0 ); i >= 0;
+                i = safe.nextSetBit( i + 1 ) ) {
+            if ( (now.cellAt( i ) & (ALREADY_OPENED | MARK_MASK)) == 0 ) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void update( BoardSnapshot now ) {
+        if ( now == last ) {
+            return;
+        }
+        if ( last == null || now.getGame() != last.getGame() ) {
+            /* a new game (or the first look at this one) */
+            safe.clear();
+            mines.clear();
+            queued.clear();
+            queueSize = 0;
+            for ( int i = 0; i < now.size(); i++ ) {
+                if ( isUncovered( now, i ) ) {
+                    enqueue( i );
+                }
+            }
+        } else {
+            BoardSnapshot before = last;
+            now.changedCells( before, i -> changed( now, i ) );
+        }
+        last = now;
+        while ( queueSize > 0 ) {
+            int i = queue[ --queueSize ];
+            queued.clear( i );
+            deduce( now, i );
+        }
+    }
+
+    private static boolean isUncovered( BoardSnapshot b, int i ) {
+        return (b.cellAt( i ) & ALREADY_OPENED) != 0 && b.inBoard( i );
+    }
+
+    /**
+     * Cell {@code i} was uncovered or flagged: look again at it and at
+     * the uncovered cells around.
+     */
+    private void changed( BoardSnapshot now, int i ) {
+        if ( !now.inBoard( i ) ) {
+            return;
+        }
+        if ( (now.cellAt( i ) & ALREADY_OPENED) != 0 ) {
+            safe.clear( i );
+            enqueue( i );
+        }
+        enqueueAround( now, i );
+    }
+
+    private void enqueueAround( BoardSnapshot now, int i ) {
+        for ( int k = 0, n = now.neighbours( i, near ); k < n; k++ ) {
+            if ( isUncovered( now, near[ k ] ) ) {
+                enqueue( near[ k ] );
+            }
+        }
+    }
+
+    private void enqueue( int i ) {
+        if ( !queued.get( i ) ) {
+            queued.set( i );
+            if ( queueSize == queue.length ) {
+                queue = Arrays.copyOf( queue, 2 * queueSize );
+            }
+            queue[ queueSize++ ] = i;
+        }
+    }
+
+    /**
+     * Applies the mine count of uncovered cell {@code i} to its covered
+     * neighbours.
+     */
+    private void deduce( BoardSnapshot now, int i ) {
+        int count = now.cellAt( i ) & MINES_MASK,
+                known = 0,
+                n_unknown = 0;
+        for ( int k = 0, n = now.neighbours( i, around ); k < n; k++ ) {
+            int j = around[ k ];
+            if ( (now.cellAt( j ) & ALREADY_OPENED) != 0 ) {
+                continue;
+            }
+            if ( mines.get( j ) ) {
+                known++;
+            } else if ( !safe.get( j ) ) {
+                unknown[ n_unknown++ ] = j;
+            }
+        }
+        if ( n_unknown == 0 ) {
+            return;
+        }
+        BitSet found = known == count ? safe
+                : known + n_unknown == count ? mines
+                : null;
+        if ( found != null ) {
+            for ( int k = 0; k < n_unknown; k++ ) {
+                found.set( unknown[ k ] );
+                enqueueAround( now, unknown[ k ] );
+            }
+        }
+    }
+}
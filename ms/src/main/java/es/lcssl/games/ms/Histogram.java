@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2023, lcu
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package es.lcssl.games.ms;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free histogram of non negative values (durations, sizes...), cheap
+ * enough to be recorded on every click. Values up to 15 are counted
+ * exactly; bigger ones in buckets of an eighth of a power of two, so the
+ * quantiles it reports are within 12.5% of the true ones.
+ *
+ * <p>
+ * This class is thread safe.
+ *
+ * @author lcu
+ */
+public class Histogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int EXACT = 2 * SUB_BUCKETS;
+    private static final int BUCKETS
+            = EXACT + (63 - SUB_BITS - 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray( BUCKETS );
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    private static int bucketOf( long value ) {
+        if ( value < EXACT ) {
+            return (int) Math.max( value, 0 );
+        }
+        int exp = 63 - Long.numberOfLeadingZeros( value );
+        int sub = (int) (value >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return EXACT + (exp - SUB_BITS - 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return the middle value of bucket {@code i}.
+     */
+    private static long valueOf( int i ) {
+        if ( i < EXACT ) {
+            return i;
+        }
+        int exp = (i - EXACT) / SUB_BUCKETS + SUB_BITS + 1,
+                sub = (i - EXACT) % SUB_BUCKETS;
+        long low = (long) (SUB_BUCKETS + sub) << (exp - SUB_BITS);
+        return low + (1L << (exp - SUB_BITS - 1));
+    }
+
+    public void record( long value ) {
+        counts.incrementAndGet( bucketOf( value ) );
+        count.increment();
+        sum.add( value );
+        long m = max.get();
+        while ( value > m && !max.compareAndSet( m, value ) ) {
+            m = max.get();
+        }
+    }
+
+    public void reset() {
+        for ( int i = 0; i < BUCKETS; i++ ) {
+            counts.set( i, 0 );
+        }
+        count.reset();
+        sum.reset();
+        max.set( 0 );
+    }
+
+    /**
+     * @return the current values of this histogram (not atomically taken,
+     *         as values keep being recorded).
+     */
+    public Snapshot snapshot() {
+        long[] c = new long[ BUCKETS ];
+        long n = 0;
+        for ( int i = 0; i < BUCKETS; i++ ) {
+            n += c[ i ] = counts.get( i );
+        }
+        return new Snapshot( c, n, sum.sum(), max.get() );
+    }
+
+    /**
+     * The values of a {@link Histogram} at some moment. Its getters make
+     * it an open type, so it is shown by JMX tools as a composite value.
+     */
+    public static class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        Snapshot( long[] counts, long count, long sum, long max ) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMean() {
+            return count == 0 ? 0 : sum / count;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public long getP50() {
+            return getQuantile( 0.5 );
+        }
+
+        public long getP90() {
+            return getQuantile( 0.9 );
+        }
+
+        public long getP99() {
+            return getQuantile( 0.99 );
+        }
+
+        /**
+         * @param q the quantile, between {@code 0.0} and {@code 1.0}.
+         * @return the value below which are a fraction {@code q} of the
+         *         values, {@code 0} if there are none.
+         */
+        public long getQuantile( double q ) {
+            if ( count == 0 ) {
+                return 0;
+            }
+            long rank = (long) (q * (count - 1)), seen = 0;
+            for ( int i = 0; i < counts.length; i++ ) {
+                seen += counts[ i ];
+                if ( seen > rank ) {
+                    return Math.min( valueOf( i ), max );
+                }
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2023, lcu
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package es.lcssl.games.ms;
+
+import java.util.Arrays;
+
+/**
+ * A list of listeners, copied on write: adding or removing one makes a
+ * new array, so notifying them is a loop on {@link #get()} without locks
+ * nor allocations, and listeners may be added or removed while being
+ * notified (the change applies from the next notification on).
+ *
+ * <p>
+ * This class is thread safe.
+ *
+ * @param <T> the type of the listeners.
+ * @author lcu
+ */
+final class Listeners<T> {
+
+    private volatile T[] listeners;
+
+    /**
+     * @param empty an empty array of listeners, whose type is used for
+     *              the arrays made.
+     */
+    Listeners( T[] empty ) {
+        listeners = empty;
+    }
+
+    /**
+     * @param empty nothing, the compiler makes an empty array of the
+     *              (maybe generic) type of the listeners.
+     * @return an empty list of listeners.
+     */
+    @SafeVarargs
+    @SuppressWarnings( "varargs" )
+    static <T> Listeners<T> of( T... empty ) {
+        return new Listeners<>( empty );
+    }
+
+    /**
+     * @return the listeners, not to be modified.
+     */
+    T[] get() {
+        return listeners;
+    }
+
+    synchronized void add( T listener ) {
+        T[] res = Arrays.copyOf( listeners, listeners.length + 1 );
+        res[ listeners.length ] = listener;
+        listeners = res;
+    }
+
+    /**
+     * Removes the last listener {@link Object#equals(Object) equal} to
+     * {@code listener}, if any.
+     *
+     * @return {@code true} if one was removed.
+     */
+    synchronized boolean remove( Object listener ) {
+        for ( int i = listeners.length - 1; i >= 0; i-- ) {
+            if ( listeners[ i ].equals( listener ) ) {
+                T[] res = Arrays.copyOf( listeners, listeners.length - 1 );
+                System.arraycopy( listeners, i + 1, res, i,
+                                  res.length - i );
+                listeners = res;
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -29,11 +29,16 @@ import es.lcssl.games.ms.HallOfFameModel.Score;
 
 import java.awt.EventQueue;
 import java.awt.event.ActionEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.beans.PropertyChangeEvent;
-import java.beans.PropertyChangeListener;
 import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.util.Date;
+import java.util.Locale;
 import java.util.ResourceBundle;
+import java.util.function.IntConsumer;
 import java.util.logging.Logger;
 
 import javax.swing.AbstractAction;
@@ -92,11 +97,35 @@ public class Main {
      *             {@link MineSweeper#DEFAULT_COLS} for the columns number, and to
      *             {@link MineSweeper#DEFAULT_PROB} for the number of mines
      *             calculation.
+     *             Option {@code --build-index} writes the binary index of
+     *             the hall of fame scores for the board configuration, so
+     *             next runs load it instead of parsing all the score files.
+     *             Option {@code --compact} compacts the hall of fame score
+     *             files of the board configuration and exits.
+     *             Option {@code --keep} limits the number of hall of fame
+     *             scores held in memory to the best ones.
+     *             Option {@code --topology} selects the
+     *             {@link Topology} of the board ({@code square},
+     *             {@code torus} or {@code hex}); only games on the
+     *             square board enter the hall of fame.
+     *             Option {@code --stall-millis} sets how long (in
+     *             milliseconds) events may wait in the event queue before
+     *             the {@link EdtMonitor} reports a stall, and option
+     *             {@code --edt-overlay} shows its figures over the board.
+     *             Option {@code --server} runs, instead of the frame, a
+     *             {@link GameServer} on the given port of the loopback
+     *             interface; the other options are the configuration of
+     *             the games it starts by default.
      *
      */
     public static void main( String[] args ) {
         int rows = MineSweeper.DEFAULT_ROWS, cols = MineSweeper.DEFAULT_COLS;
         double prob = MineSweeper.DEFAULT_PROB;
+        boolean build_index = false, compact = false, overlay = false;
+        int keep = 0;
+        long stall_millis = EdtMonitor.DEFAULT_STALL_MILLIS;
+        int server_port = -1;
+        Topology topology = Topology.SQUARE;
 
         /* process program arguments */
         for ( int i = 0; i < args.length; i++ ) {
@@ -110,6 +139,28 @@ public class Main {
             case "--prob":
                 prob = Double.parseDouble( args[ ++i ] );
                 break;
+            case "--build-index":
+                build_index = true;
+                break;
+            case "--compact":
+                compact = true;
+                break;
+            case "--keep":
+                keep = Integer.parseInt( args[ ++i ] );
+                break;
+            case "--topology":
+                topology = Topology.valueOf(
+                        args[ ++i ].toUpperCase( Locale.ROOT ) );
+                break;
+            case "--stall-millis":
+                stall_millis = Long.parseLong( args[ ++i ] );
+                break;
+            case "--edt-overlay":
+                overlay = true;
+                break;
+            case "--server":
+                server_port = Integer.parseInt( args[ ++i ] );
+                break;
             default:
                 LOG.config( format(
                         INTL.getString( "INVALID_PARAMETER" ),
@@ -118,10 +169,73 @@ public class Main {
             }
         }
 
+        if ( compact ) {
+            new HallOfFameModel(
+                    rows, cols, MineSweeper.minesFor( rows, cols, prob ),
+                    new File( INTL.getString( "HALL_OF_FAME_BASE_DIR" ) ),
+                    keep )
+                    .compact();
+            return;
+        }
+
+        GameMetrics.register();
+        Trace.dumpOnCrash();
+
+        if ( server_port >= 0 ) {
+            /* the boards are never shown */
+            System.setProperty( "java.awt.headless", "true" );
+            try ( GameServer server = new GameServer(
+                    server_port, rows, cols, prob, topology,
+                    new HallOfFameCache( new File(
+                            INTL.getString( "HALL_OF_FAME_BASE_DIR" ) ),
+                                         keep ) ) ) {
+                server.serve();
+            } catch ( IOException ex ) {
+                LOG.severe( () -> format(
+                        INTL.getString( "SERVER_FAILED" ), ex ) );
+            }
+            return;
+        }
+
+        EdtMonitor.start( stall_millis );
+
+        /* Swing components are built in the event dispatch thread */
+        int r = rows, c = cols, k = keep;
+        double p = prob;
+        boolean b = build_index, o = overlay;
+        Topology t = topology;
+        EventQueue.invokeLater( () -> createAndShow( r, c, p, t, b, k, o ) );
+    }
+
+    /**
+     * Shows a modal message dialog, telling the {@link EdtMonitor} the
+     * event dispatch thread is in it.
+     */
+    private static void showMessage( JFrame frame, Object message,
+            String title, int message_type ) {
+        EdtMonitor.Operation previous
+                = EdtMonitor.enter( EdtMonitor.Operation.DIALOG );
+        try {
+            JOptionPane.showMessageDialog(
+                    frame, message, title, message_type );
+        } finally {
+            EdtMonitor.exit( previous );
+        }
+    }
+
+    /**
+     * Builds the game frame and shows it. The hall of fame is loaded in
+     * background, so the board is playable before all the scores are read.
+     * Must be called from the event dispatch thread.
+     */
+    private static void createAndShow( int rows, int cols, double prob,
+            Topology topology, boolean build_index, int keep,
+            boolean overlay ) {
+
         JFrame frame = new JFrame( INTL.getString( "TITLE" ) );
 
         // this is the MineSweeper board
-        MineSweeper board = new MineSweeper( rows, cols, prob );
+        MineSweeper board = new MineSweeper( rows, cols, prob, topology );
         JScrollPane sp = new JScrollPane( board );
         JMenuBar mb = new JMenuBar();
         frame.setJMenuBar( mb );
@@ -134,18 +248,14 @@ public class Main {
                 INTL.getString( "CELLS" ),
                 INTL.getString( "FORMAT_CELLS" ),
                 board.getCellsToGo() );
-        board.addPropertyChangeListener(
-                MineSweeper.PROPERTY_CELLS_TO_GO,
-                places_to_go );
+        board.addCellsToGoListener( places_to_go::setValue );
 
         ValueField mines_to_guard = new ValueField(
                 INTL.getString( "MINES" ),
                 INTL.getString( "FORMAT_MINES" ),
                 board.getMinesToMark() );
 
-        board.addPropertyChangeListener(
-                MineSweeper.PROPERTY_MINES,
-                mines_to_guard );
+        board.addMinesListener( mines_to_guard::setValue );
 
         Chronograph chrono = new Chronograph();
         ValueField time = new ValueField(
@@ -157,20 +267,17 @@ public class Main {
                 Chronograph.PROPERTY_TIMESTAMP, time );
 
 
+        /* starts the chronograph on the first cell uncovered */
+        ChronoStartListener chrono_start
+                = new ChronoStartListener( board, chrono::start );
+
         /* add a reset menu option */
         file_menu.add( new AbstractAction( INTL.getString( "RE-INIT" ) ) {
             @Override
             public void actionPerformed( ActionEvent e ) {
                 EventQueue.invokeLater( () -> {
+                    /* the board tells its counters */
                     board.init();
-                    places_to_go.propertyChange( new PropertyChangeEvent(
-                            board,
-                            MineSweeper.PROPERTY_CELLS_TO_GO,
-                            0, board.getCellsToGo() ) );
-                    mines_to_guard.propertyChange( new PropertyChangeEvent(
-                            board,
-                            MineSweeper.PROPERTY_MINES,
-                            0, board.getMinesToMark() ) );
                     time.propertyChange(
                             new PropertyChangeEvent(
                                     chrono,
@@ -179,19 +286,35 @@ public class Main {
                                     Chronograph.toString( 0 ) ) );
 
                     chrono.reset();
-                    board.addPropertyChangeListener(
-                            MineSweeper.PROPERTY_CELLS_TO_GO,
-                            new ChronoPropertyChangeListener(
-                                    board,
-                                    MineSweeper.PROPERTY_CELLS_TO_GO,
-                                    chrono::start ) );
+                    chrono_start.arm();
                     board.validate();
                 } );
             }
         } );
 
+        /* highlight a safe cell */
+        file_menu.add( new AbstractAction( INTL.getString( "HINT" ) ) {
+            @Override
+            public void actionPerformed( ActionEvent e ) {
+                if ( !board.showHint() ) {
+                    showMessage( frame,
+                                 INTL.getString( "NO_HINT" ),
+                                 INTL.getString( "HINT" ),
+                                 JOptionPane.INFORMATION_MESSAGE );
+                }
+            }
+        } );
+
+        final HallOfFameCache hall_of_fame_cache = new HallOfFameCache(
+                new File(INTL.getString( "HALL_OF_FAME_BASE_DIR" )), keep );
         final HallOfFameComponent hall_of_fame = new HallOfFameComponent( board,
-                new File(INTL.getString( "HALL_OF_FAME_BASE_DIR" )) );
+                hall_of_fame_cache );
+        if ( build_index ) {
+            /* once loaded, in the loader thread */
+            hall_of_fame_cache.getLater(
+                    rows, cols, board.getMinesToMark(), null )
+                    .thenAccept( HallOfFameModel::buildIndex );
+        }
 
         file_menu.add( new AbstractAction( INTL.getString( "HALL_OF_FAME" ) ) {
             @Override
@@ -200,6 +323,25 @@ public class Main {
             }
         } );
 
+        file_menu.add( new AbstractAction( INTL.getString( "DUMP_TRACE" ) ) {
+            @Override
+            public void actionPerformed( ActionEvent e ) {
+                try {
+                    showMessage( frame,
+                                 format( INTL.getString( "TRACE_DUMPED" ),
+                                         Trace.dump() ),
+                                 INTL.getString( "DUMP_TRACE" ),
+                                 JOptionPane.INFORMATION_MESSAGE );
+                } catch ( IOException ex ) {
+                    showMessage( frame,
+                                 format( INTL.getString( "CANNOT_DUMP_TRACE" ),
+                                         ex ),
+                                 INTL.getString( "ERROR_MESSAGE" ),
+                                 JOptionPane.ERROR_MESSAGE );
+                }
+            }
+        } );
+
         /* Add a quit button */
         file_menu.add( new AbstractAction( INTL.getString( "QUIT" ) ) {
             @Override
@@ -222,90 +364,136 @@ public class Main {
         mb.add( places_to_go );
         mb.add( mines_to_guard );
         frame.setContentPane( sp );
+        if ( overlay ) {
+            frame.setGlassPane( new EdtMonitor.Overlay() );
+            frame.getGlassPane().setVisible( true );
+        }
         frame.setDefaultCloseOperation( JFrame.EXIT_ON_CLOSE );
         frame.pack();
+        /* the frame is usable once the events of its opening are done */
+        frame.addWindowListener( new WindowAdapter() {
+            @Override
+            public void windowOpened( WindowEvent e ) {
+                EventQueue.invokeLater( () -> LOG.info( () -> format(
+                        INTL.getString( "STARTUP_TIME" ),
+                        ManagementFactory.getRuntimeMXBean().getUptime() ) ) );
+            }
+        } );
         frame.setVisible( true );
 
 //        System.out.println(board);
 
         /* register a loser callback */
-        board.addPropertyChangeListener(
-                MineSweeper.PROPERTY_LOST,
-                ev -> {
-                    if ( (boolean) ev.getNewValue() ) {
-                        chrono.stop();
-                        String error_msg = INTL.getString( "EXPLODED" );
-                        LOG.info( error_msg );
-                        JOptionPane.showMessageDialog(
-                                frame,
-                                error_msg,
-                                INTL.getString( "ERROR_MESSAGE" ),
-                                JOptionPane.ERROR_MESSAGE );
-                    }
-                } );
+        board.addLostListener( () -> {
+            chrono.stop();
+            String error_msg = INTL.getString( "EXPLODED" );
+            LOG.info( error_msg );
+            showMessage(
+                    frame,
+                    error_msg,
+                    INTL.getString( "ERROR_MESSAGE" ),
+                    JOptionPane.ERROR_MESSAGE );
+        } );
 
         /* ... and a winner callback */
-        board.addPropertyChangeListener(
-                MineSweeper.PROPERTY_WON,
-                ev -> {
-                    chrono.stop();
-                    Score added = hall_of_fame.getModel().addScore(
-                                System.currentTimeMillis(),
-                                chrono.getTimeMillis() );
-                    int idx = added.getPosition() - 1;
-                    JList list = hall_of_fame.getList();
-                    list.setSelectedIndex( idx );
-                    list.ensureIndexIsVisible( idx );
-
-                    LOG.info( format(
-                            INTL.getString( "SUCCESS_LOG" ),
-                            added.getPosition(),
-                            added.getScoreAsString(),
-                            added.getWhenAsString() ) );
-                    JOptionPane.showMessageDialog(
-                            frame,
-                            format(
-                            INTL.getString( "SUCCESS" ),
-                            added.getPosition(),
-                            added.getScoreAsString(),
-                            added.getWhenAsString() ),
-                            INTL.getString( "SUCCESS_MESSAGE" ),
-                            JOptionPane.INFORMATION_MESSAGE );
-                } );
+        board.addWonListener( () -> {
+            chrono.stop();
+            if ( board.getTopology() != Topology.SQUARE ) {
+                /* the hall of fame is for the square board */
+                showMessage(
+                        frame,
+                        format(
+                        INTL.getString( "SUCCESS_UNRANKED" ),
+                        Chronograph.toString(
+                                chrono.getTimeMillis() ),
+                        board.getTopology() ),
+                        INTL.getString( "SUCCESS_MESSAGE" ),
+                        JOptionPane.INFORMATION_MESSAGE );
+                return;
+            }
+            long when = System.currentTimeMillis(),
+                    score = chrono.getTimeMillis();
+            /* the model may still be loading, don't wait for it here */
+            hall_of_fame.whenLoaded( model -> {
+                EdtMonitor.Operation previous = EdtMonitor.enter(
+                        EdtMonitor.Operation.HALL_OF_FAME );
+                Score added;
+                try {
+                    added = model.addScore( when, score );
+                } finally {
+                    EdtMonitor.exit( previous );
+                }
+                int idx = added.getPosition() - 1;
+                JList list = hall_of_fame.getList();
+                list.setSelectedIndex( idx );
+                list.ensureIndexIsVisible( idx );
+
+                LOG.info( format(
+                        INTL.getString( "SUCCESS_LOG" ),
+                        added.getPosition(),
+                        added.getScoreAsString(),
+                        added.getWhenAsString() ) );
+                showMessage(
+                        frame,
+                        format(
+                        INTL.getString( "SUCCESS" ),
+                        added.getPosition(),
+                        added.getScoreAsString(),
+                        added.getWhenAsString() ),
+                        INTL.getString( "SUCCESS_MESSAGE" ),
+                        JOptionPane.INFORMATION_MESSAGE );
+            } );
+        } );
 
         /* ... chronograph set */
-        board.addPropertyChangeListener(
-                MineSweeper.PROPERTY_CELLS_TO_GO,
-                new ChronoPropertyChangeListener(
-                        board,
-                        MineSweeper.PROPERTY_CELLS_TO_GO,
-                        chrono::start ) );
+        chrono_start.arm();
     }
 
-    private static class ChronoPropertyChangeListener
-            implements PropertyChangeListener {
+    /**
+     * Runs an action on the first cell uncovered after being armed (the
+     * first decrease of the cells to go), and disarms itself. The cells
+     * to go told by a restart are not a cell uncovered. It is only
+     * registered while armed, so however many times the game is
+     * restarted it is registered at most once.
+     */
+    static class ChronoStartListener implements IntConsumer {
 
         private static final Logger LOG = Logger.getLogger(
-                ChronoPropertyChangeListener.class.getSimpleName() );
+                ChronoStartListener.class.getSimpleName() );
 
         Runnable toDo;
-        String propertyName;
         MineSweeper board;
+        boolean armed;
 
-        ChronoPropertyChangeListener(
-                MineSweeper board, String property_name,
-                Runnable to_do ) {
+        /**
+         * The last cells to go seen.
+         */
+        int cellsToGo;
+
+        ChronoStartListener( MineSweeper board, Runnable to_do ) {
             toDo = to_do;
-            propertyName = property_name;
             this.board = board;
         }
 
+        void arm() {
+            if ( !armed ) {
+                armed = true;
+                cellsToGo = board.getCellsToGo();
+                board.addCellsToGoListener( this );
+            }
+        }
+
         @Override
-        public void propertyChange( PropertyChangeEvent evt ) {
-            LOG.fine( evt.toString() );
+        public void accept( int cells_to_go ) {
+            LOG.fine( () -> String.valueOf( cells_to_go ) );
+            if ( cells_to_go >= cellsToGo ) {
+                /* a restart, nothing uncovered yet */
+                cellsToGo = cells_to_go;
+                return;
+            }
             toDo.run();
-            board.removePropertyChangeListener(
-                    propertyName, this );
+            armed = false;
+            board.removeCellsToGoListener( this );
         }
     }
 }
@@ -25,24 +25,26 @@
  */
 package es.lcssl.games.ms;
 
+import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.EventQueue;
-import java.awt.GridLayout;
-import java.awt.Insets;
-import java.awt.event.ActionEvent;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
-import java.beans.PropertyChangeSupport;
-import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Random;
-import java.util.ResourceBundle;
-import java.util.logging.Logger;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 
-import javax.imageio.ImageIO;
-import javax.swing.AbstractAction;
-import javax.swing.ImageIcon;
-import javax.swing.JButton;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 
 import static java.text.MessageFormat.format;
 
@@ -54,15 +56,19 @@ import static java.text.MessageFormat.format;
  * <li>The Swing widget.
  * </ul>
  *
+ * The cells are not components, they are painted from a
+ * {@link CellSprites} atlas (only the ones inside the clip) and pushed by
+ * clicking on them; a shift-click flags a cell. The neighbours of each
+ * cell are given by the {@link Topology} of the board.
+ *
+ * <p>
+ * The board is changed only from the event dispatch thread. Other
+ * threads read it through {@link #snapshot()}.
+ *
  * @author lcu
  */
 public class MineSweeper extends JPanel {
 
-    private static final Logger LOGGER =
-            Logger.getLogger( MineSweeper.class.getName() );
-    private static final ResourceBundle INTL =
-            ResourceBundle.getBundle( MineSweeper.class.getName() );
-
     public static final byte MINE = (byte) 0x80;
     public static final byte ALREADY_OPENED = 0x40;
     public static final byte MARK_MASK = 0x20;
@@ -75,66 +81,200 @@ public class MineSweeper extends JPanel {
     public static final String PROPERTY_LOST = "lost";
     public static final String PROPERTY_WON = "won";
     public static final int PREFERRED_SIZE = 28;
-    public static final Insets DEFAULT_BUTTON_INSETS =
-            new Insets( 1, 1, 1, 1 );
-
-    private static final Color bg[] = {
-        Color.WHITE, Color.CYAN, Color.GREEN, Color.YELLOW,
-        Color.ORANGE, Color.PINK, Color.MAGENTA, Color.RED,
-        Color.DARK_GRAY };
-    private static ImageIcon flagged;
-    private static ImageIcon exploded;
-    private static ImageIcon mine;
-    private static ImageIcon questionMark;
-
-    static {
-        /* class initialization code, load the icons */
-        try {
-            ClassLoader cl = MineSweeper.class.getClassLoader();
-            flagged = new ImageIcon(
-                    ImageIO.read( cl.getResourceAsStream(
-                            "flagged.png" ) ) );
-            exploded = new ImageIcon(
-                    ImageIO.read( cl.getResourceAsStream(
-                            "exploded.png" ) ) );
-            mine = new ImageIcon(
-                    ImageIO.read( cl.getResourceAsStream(
-                            "mine.png" ) ) );
-            questionMark = new ImageIcon(
-                    ImageIO.read( cl.getResourceAsStream(
-                            "question.png" ) ) );
-        } catch ( IOException | IllegalArgumentException ex ) {
-            LOGGER.severe( () -> format( INTL.getString(
-                    "CANNOT_LOAD_RESOURCES" ),
-                                           ex ) );
-        }
-    }
 
     private final int rows, cols;
-    private byte[][] cells;
-    private final JButton[][] pushbuttonActionSupport;
+
+    /**
+     * Width of a row of {@link #cells}, including the border.
+     */
+    private final int width;
+
+    /**
+     * The cells, row by row, surrounded by a border of {@link #BORDER}
+     * cells. The border is not a neighbour of any cell, it only keeps
+     * the row arithmetic of {@link #index(int, int)} simple.
+     */
+    private final byte[] cells;
+
+    private final Topology topology;
+
+    /**
+     * The neighbours of each cell, in compressed sparse row form: those
+     * of {@code cell} are {@code adjacent[start[cell]]} to
+     * {@code adjacent[start[cell + 1] - 1]}.
+     */
+    private final int[] start, adjacent;
+
+    /**
+     * {@code true} if some rows are drawn shifted half a cell.
+     */
+    private final boolean shifted;
+
+    /**
+     * The index of each board cell, permuted to select where the mines
+     * go.
+     */
+    private final int[] shuffle;
+
+    /**
+     * What is shown on each cell, one of the {@link CellSprites}, indexed
+     * as {@link #cells}.
+     */
+    private final byte[] shown;
+    private CellSprites sprites;
+
+    /**
+     * The cells whose picture changed since {@link #init()}, so only
+     * those have to be covered again.
+     */
+    private int[] touched = new int[16];
+    private int touchedCount;
+    private final BitSet isTouched = new BitSet();
     private final Random rnd = new Random();
     private int minesToMark;
     private int cellsToGo;
     private boolean lost = false;
     private boolean won = false;
     private double probability = DEFAULT_PROB;
-    private final PropertyChangeSupport propertyChangeSupport =
-            new PropertyChangeSupport( this );
+
+    /**
+     * Guards the state of the game ({@link #cells} and the counters) for
+     * the readers in other threads: the event dispatch thread takes it
+     * to write, and counts the changes in {@link #version}. The last
+     * snapshot taken is kept, as it can be reused until the next change,
+     * and the next one is built from it, copying only the
+     * {@link #changedLeaves} (chunks of {@link BoardSnapshot#LEAF}
+     * cells). Snapshots are built one at a time.
+     */
+    private final StampedLock lock = new StampedLock();
+    private long version;
+    private int game = -1;
+    private final BitSet changedLeaves = new BitSet();
+    private volatile BoardSnapshot snapshot;
+    private final Object snapshotLock = new Object();
+
+    /**
+     * The safe cells found for hints, and the one highlighted, if any.
+     */
+    private final HintCache hints = new HintCache();
+    private int hinted = -1;
+    private static final Color HINT_COLOR = new Color( 0x20c020 );
+
+    /**
+     * Listeners of the cells to go, the mines to mark, and the end of the
+     * game. Those registered as {@link PropertyChangeListener}s are here
+     * too, wrapped in a {@link PropertyAdapter}.
+     */
+    private final Listeners<IntConsumer> cellsToGoListeners
+            = new Listeners<>( new IntConsumer[0] );
+    private final Listeners<IntConsumer> minesListeners
+            = new Listeners<>( new IntConsumer[0] );
+    private final Listeners<Runnable> wonListeners
+            = new Listeners<>( new Runnable[0] );
+    private final Listeners<Runnable> lostListeners
+            = new Listeners<>( new Runnable[0] );
+    private final Listeners<Consumer<BoardDelta>> deltaListeners
+            = Listeners.of();
+
+    /**
+     * The cascade of uncovers of the last click: the uncovers scheduled
+     * and not yet run, the cells uncovered, when it was clicked and what
+     * the {@link EdtMonitor} was told before.
+     */
+    private int pendingUncovers;
+    private int cascadeCells;
+    private long cascadeStart;
+    private EdtMonitor.Operation beforeCascade;
+
+    /**
+     * While {@link #apply(int[], byte[]) applying moves}, the cells to
+     * uncover of the current move (instead of uncovering them later);
+     * nothing is repainted, nor notified, until all the moves are done.
+     */
+    private boolean applying;
+    private int[] pending = new int[64];
+    private int pendingCount;
+
+    /**
+     * The cells uncovered by the cascade of the last click, or by the
+     * moves being applied, as {@code row * cols + col}, for the
+     * {@link BoardDelta}.
+     */
+    private int[] opened = new int[64];
+    private int openedCount;
+
+    /**
+     * The cells flagged or unflagged meanwhile, as {@link #opened}, and
+     * the cell that exploded ({@code -1} if none).
+     */
+    private int[] toggled = new int[16];
+    private int toggledCount;
+    private int exploded = -1;
+
+    /**
+     * Value of the border cells: they look already opened (so they are
+     * never uncovered) and not marked. Their mine counts are incremented
+     * as any other cell's, but never used.
+     */
+    private static final byte BORDER = ALREADY_OPENED;
 
     public void init() {
 
-        int N = rows * cols,
-                n = (int) (N * probability + 0.5),
-                array[] = new int[N];
+        long start_time = System.nanoTime();
+        EdtMonitor.Operation previous
+                = EdtMonitor.enter( EdtMonitor.Operation.GENERATION );
+        int n = minesFor( rows, cols, probability );
+        long stamp = lock.writeLock();
+        try {
+            placeMines( n );
+        } finally {
+            lock.unlockWrite( stamp );
+        }
+
+        /* cover again only the cells changed in the last game */
+        for ( int i = 0; i < touchedCount; i++ ) {
+            int cell = touched[i];
+            shown[cell] = CellSprites.HIDDEN;
+            isTouched.clear( cell );
+            repaintCell( cell );
+        }
+        touchedCount = 0;
+        openedCount = 0;
+        toggledCount = 0;
+        clearHint();
+
+        long generation_time = System.nanoTime() - start_time;
+        GameMetrics.get().generation( generation_time );
+        Trace.record( Trace.Event.INIT, n, generation_time );
+        EdtMonitor.exit( previous );
+        fireCellsToGo();
+        fireMines();
+        fireDelta();
+    }
+
+    /**
+     * Starts a new game with {@code n} mines, with the lock held.
+     */
+    private void placeMines( int n ) {
 
-        cells = new byte[rows][cols];
+        int N = rows * cols,
+                array[] = shuffle;
 
-        for ( int i = 0; i < N; i++ ) {
-            array[i] = i;
-            /* to select unique random cells (non-repeating) */
+        /* clear the board cells, and set the border again: no cell has
+         * it as a neighbour, but a stray write would last for all the
+         * games to come */
+        Arrays.fill( cells, 0, index( 0, 0 ), BORDER );
+        for ( int r = 0; r < rows; r++ ) {
+            int first = index( r, 0 );
+            Arrays.fill( cells, first, first + cols, (byte) 0 );
+            cells[first + cols] = BORDER;
+            cells[first + cols + 1] = BORDER;
         }
+        Arrays.fill( cells, index( rows - 1, cols ), cells.length, BORDER );
 
+        /* array is a permutation of the cells (the one left by the last
+         * game), swapping a random one to each of the first n positions
+         * selects unique random cells (non-repeating) */
         for ( int i = 0; i < n; i++ ) {
             /* cell is a random, non selected yet cell */
             int cell = i + rnd.nextInt( N-- );
@@ -147,63 +287,58 @@ public class MineSweeper extends JPanel {
             }
             cell = array[i];
 
-            /* extract row and column */
-            int r = cell / cols,
-                    c = cell % cols;
-
             /* set mine */
-            cells[r][c] = MINE;
-
-            /* mark neighbor cells */
-            incrementSurroundingCellAt( r - 1, c - 1 );
-            incrementSurroundingCellAt( r - 1, c );
-            incrementSurroundingCellAt( r - 1, c + 1 );
-            incrementSurroundingCellAt( r, c - 1 );
-            incrementSurroundingCellAt( r, c + 1 );
-            incrementSurroundingCellAt( r + 1, c - 1 );
-            incrementSurroundingCellAt( r + 1, c );
-            incrementSurroundingCellAt( r + 1, c + 1 );
-        }
-        /* init the pushbuttons */
-        for ( int r = 0; r < rows; r++ ) {
-            for ( int c = 0; c < cols; c++ ) {
-                JButton b = pushbuttonActionSupport[r][c];
-                /* if we don't still have the pushbutton, create it */
-                if ( b == null ) {
-                    b = pushbuttonActionSupport[r][c] = new JButton();
-                    /* and add to this panel */
-                    add( b );
-                    /* create and sect the action associated to the button */
-                    b.setAction( new PushButtonAction( r, c, b ) );
-                    b.setMargin( DEFAULT_BUTTON_INSETS );
-                }
-                /* set/reset the button */
-                b.setText( null );
-                b.setIcon( null );
-                b.setBackground( null );
-                b.setForeground( null );
-                b.setBorderPainted( true );
+            cells[cell] |= MINE;
+
+            /* mark neighbor cells, mines included (their count is never
+             * used) */
+            for ( int k = start[cell], end = start[cell + 1]; k < end; k++ ) {
+                cells[adjacent[k]]++;
             }
         }
-        pushbuttonActionSupport[0][0].setPreferredSize(
-                new Dimension( PREFERRED_SIZE, PREFERRED_SIZE ) );
-
         minesToMark = n;
         cellsToGo = N;
+        exploded = -1;
         lost = false;
         won = false;
-        firePropertyChange( PROPERTY_CELLS_TO_GO, 0, cellsToGo );
-        firePropertyChange( PROPERTY_MINES, 0, minesToMark );
+        version++;
+        game++;
+        changedLeaves.set( index( 0, 0 ) >>> BoardSnapshot.LEAF_BITS,
+                           (index( rows - 1, cols - 1 )
+                            >>> BoardSnapshot.LEAF_BITS) + 1 );
     }
 
     public MineSweeper( int rows, int cols, double prob ) {
-        super( new GridLayout( rows, cols ) );
+        this( rows, cols, prob, Topology.SQUARE );
+    }
+
+    public MineSweeper( int rows, int cols, double prob,
+            Topology topology ) {
+        super( null );
 
         this.rows = rows;
         this.cols = cols;
+        this.topology = topology;
         probability = prob;
-        cells = new byte[rows][cols];
-        pushbuttonActionSupport = new JButton[rows][cols];
+        /* decode the icons while we build the board */
+        CellIcons.preload();
+        width = cols + 2;
+        cells = new byte[(rows + 2) * width];
+        Arrays.fill( cells, BORDER );
+        shown = new byte[cells.length];
+        Topology.Adjacency adjacency = topology.adjacency(
+                rows, cols, cells.length, this::index );
+        start = adjacency.start;
+        adjacent = adjacency.neighbours;
+        shifted = rows > 1 && topology.isShifted( 1 );
+        shuffle = new int[rows * cols];
+        for ( int i = 0; i < shuffle.length; i++ ) {
+            shuffle[i] = index( i / cols, i % cols );
+        }
+        setPreferredSize( new Dimension(
+                cols * PREFERRED_SIZE + (shifted ? PREFERRED_SIZE / 2 : 0),
+                rows * PREFERRED_SIZE ) );
+        addMouseListener( new CellMouseListener() );
         init();
     }
 
@@ -215,223 +350,808 @@ public class MineSweeper extends JPanel {
         this( DEFAULT_ROWS, DEFAULT_COLS, DEFAULT_PROB );
     }
 
+    /**
+     * @return the number of mines placed on a board of {@code rows} by
+     *         {@code cols} cells with mine probability {@code prob}.
+     */
+    public static int minesFor( int rows, int cols, double prob ) {
+        return (int) (rows * cols * prob + 0.5);
+    }
+
     private boolean isCellInBoard( int r, int c ) {
         return r >= 0 && r < rows && c >= 0 && c < cols;
     }
 
-    private class PushButtonAction extends AbstractAction {
+    /**
+     * @return the mines around cell {@code move} (as {@code row * cols +
+     *         col}) if it is uncovered, {@code -1} if not. Unlike a
+     *         {@link #snapshot()}, only for the thread playing the board.
+     */
+    int minesAround( int move ) {
+        int cell_value = cells[index( move / cols, move % cols )];
+        return (cell_value & ALREADY_OPENED) != 0
+                ? cell_value & MINES_MASK
+                : -1;
+    }
+
+    /**
+     * @return the value of cell {@code (r, c)}, with {@code -1 <= r <=
+     *         rows} and {@code -1 <= c <= cols}, so the border is
+     *         included. Unlike a {@link #snapshot()}, it tells where the
+     *         mines are: only for the thread playing the board, to check
+     *         it or to show the mines once the game is lost.
+     */
+    byte cellAt( int r, int c ) {
+        return cells[index( r, c )];
+    }
 
-        public final int r, c;
-        public final JButton b;
+    /**
+     * @return the index of cell {@code (r, c)} in {@link #cells}.
+     */
+    private int index( int r, int c ) {
+        return (r + 1) * width + c + 1;
+    }
 
-        public PushButtonAction( int r, int c, JButton b ) {
-            this.r = r;
-            this.c = c;
-            this.b = b;
+    private int rowOf( int cell ) {
+        return cell / width - 1;
+    }
+
+    private int colOf( int cell ) {
+        return cell % width - 1;
+    }
+
+    /**
+     * Changes the picture of a cell, and repaints it.
+     */
+    private void setShown( int cell, int sprite ) {
+        touch( cell );
+        shown[cell] = (byte) sprite;
+        if ( !applying ) {
+            repaintCell( cell );
         }
+    }
 
-        private void uncover(
-                final int r, final int c,
-                final ActionEvent e ) {
+    private void repaintCell( int cell ) {
+        int size = cellSize(),
+                r = rowOf( cell );
+        repaint( cellX( r, colOf( cell ), size ), r * size, size, size );
+    }
+
+    /**
+     * @return the left side of cell {@code (r, c)}.
+     */
+    private int cellX( int r, int c, int size ) {
+        return c * size + (topology.isShifted( r ) ? size / 2 : 0);
+    }
 
-            if ( isCellInBoard( r, c )
-                    && (cells[r][c] & ALREADY_OPENED) == 0 ) {
-                /* call the actionPerformed of the target cell with the event
-                 * of the calling code */
-                pushbuttonActionSupport[r][c]
-                        .getAction().actionPerformed( e );
+    /**
+     * Records that the picture of a cell is going to change.
+     */
+    private void touch( int cell ) {
+        if ( !isTouched.get( cell ) ) {
+            isTouched.set( cell );
+            if ( touchedCount == touched.length ) {
+                touched = Arrays.copyOf( touched, 2 * touchedCount );
             }
+            touched[touchedCount++] = cell;
         }
+    }
 
-        private boolean isMarked( int r, int c ) {
-            return isCellInBoard( r, c ) && (cells[r][c] & MARK_MASK) != 0;
+    /**
+     * @return the current size of the cells, they are square and fill
+     *         the board.
+     */
+    private int cellSize() {
+        int size = Math.min(
+                shifted ? 2 * getWidth() / (2 * cols + 1) : getWidth() / cols,
+                getHeight() / rows );
+        return size > 0 ? size : PREFERRED_SIZE;
+    }
+
+    @Override
+    protected void paintComponent( Graphics g ) {
+        super.paintComponent( g );
+        int size = cellSize();
+        if ( sprites == null || !sprites.fits( size, this ) ) {
+            sprites = new CellSprites( size, CellIcons.scaleOf( this ),
+                                       getGraphicsConfiguration() );
+        }
+        /* only the cells inside the clip */
+        Rectangle clip = g.getClipBounds();
+        if ( clip == null ) {
+            clip = new Rectangle( 0, 0, getWidth(), getHeight() );
+        }
+        int r0 = Math.max( clip.y / size, 0 ),
+                r1 = Math.min( (clip.y + clip.height - 1) / size, rows - 1 ),
+                c0 = Math.max( (clip.x - size / 2) / size, 0 ),
+                c1 = Math.min( (clip.x + clip.width - 1) / size, cols - 1 );
+        for ( int r = r0; r <= r1; r++ ) {
+            int cell = index( r, c0 ),
+                    x = cellX( r, c0, size );
+            for ( int c = c0; c <= c1; c++, x += size ) {
+                sprites.paint( g, shown[cell++], x, r * size );
+            }
+        }
+        if ( hinted >= 0 ) {
+            int r = rowOf( hinted );
+            Graphics2D g2 = (Graphics2D) g.create();
+            g2.setColor( HINT_COLOR );
+            g2.setStroke( new BasicStroke( Math.max( size / 10, 2 ) ) );
+            g2.drawRect( cellX( r, colOf( hinted ), size ) + 1, r * size + 1,
+                         size - 3, size - 3 );
+            g2.dispose();
+        }
+    }
+
+    /**
+     * Highlights a cell that can be uncovered safely, if one can be
+     * deduced from the cells uncovered. Only the cells around those
+     * changed since the last hint are looked at again.
+     *
+     * @return {@code true} if a cell is highlighted.
+     */
+    public boolean showHint() {
+        clearHint();
+        if ( lost || won ) {
+            return false;
+        }
+        hinted = hints.hint( snapshot() );
+        if ( hinted < 0 ) {
+            return false;
+        }
+        repaintCell( hinted );
+        return true;
+    }
+
+    private void clearHint() {
+        if ( hinted >= 0 ) {
+            repaintCell( hinted );
+            hinted = -1;
+        }
+    }
+
+    /**
+     * Action of a move that uncovers the cell (or the unflagged cells
+     * around it, if it is already uncovered and all its mines are
+     * flagged), as a click does.
+     */
+    public static final byte MOVE_UNCOVER = 0;
+
+    /**
+     * Action of a move that flags the cell, or unflags it if it was
+     * flagged, as a shift click does.
+     */
+    public static final byte MOVE_FLAG = 1;
+
+    /**
+     * Action of a move that uncovers the cell if it is still covered, and
+     * not flagged, when the move is done, and does nothing otherwise (so
+     * sweeping a region with it keeps its flags).
+     */
+    public static final byte MOVE_OPEN = 2;
+
+    /**
+     * Action of a move that uncovers the unflagged cells around the cell,
+     * if it is already uncovered when the move is done (and all its mines
+     * are flagged), and does nothing otherwise.
+     */
+    public static final byte MOVE_CHORD = 3;
+
+    /**
+     * Applies many moves at once, for programs playing the game. Each move
+     * is done as the click on its cell, cascade included, but the board is
+     * repainted and the listeners notified only once, after all of them.
+     * The moves after the one that ends the game are ignored. The action
+     * of each move is decided on the state of its cell when it is done,
+     * so earlier moves of the batch count. It must be called in the event
+     * dispatch thread.
+     *
+     * @param moves   the cells moved, as {@code row * cols + col}.
+     * @param actions the action of each move, {@link #MOVE_UNCOVER},
+     *                {@link #MOVE_FLAG}, {@link #MOVE_OPEN} or
+     *                {@link #MOVE_CHORD}.
+     * @return the result of the moves.
+     * @throws IllegalArgumentException if the arrays have different
+     *                                  lengths, a cell is out of the board
+     *                                  or an action is unknown.
+     */
+    public MoveResult apply( int[] moves, byte[] actions ) {
+
+        if ( moves.length != actions.length ) {
+            throw new IllegalArgumentException(
+                    moves.length + " != " + actions.length );
+        }
+        for ( int move : moves ) {
+            if ( move < 0 || move >= rows * cols ) {
+                throw new IllegalArgumentException( String.valueOf( move ) );
+            }
+        }
+        for ( byte action : actions ) {
+            if ( action < MOVE_UNCOVER || action > MOVE_CHORD ) {
+                throw new IllegalArgumentException(
+                        String.valueOf( action ) );
+            }
+        }
+
+        long start_time = System.nanoTime();
+        EdtMonitor.Operation previous
+                = EdtMonitor.enter( EdtMonitor.Operation.CASCADE );
+        boolean was_lost = lost,
+                was_won = won;
+        int cells_to_go = cellsToGo,
+                mines_to_mark = minesToMark;
+        /* a cascade of a click may be in progress, keep its cells */
+        int previous_cells = cascadeCells,
+                first_opened = openedCount,
+                first_toggled = toggledCount,
+                applied = 0;
+        cascadeCells = 0;
+        clearHint();
+        applying = true;
+        try {
+            while ( applied < moves.length && !lost && !won ) {
+                int move = moves[applied],
+                        cell = index( move / cols, move % cols );
+                byte action = actions[applied++];
+                boolean covered = (cells[cell] & ALREADY_OPENED) == 0;
+                if ( action == MOVE_UNCOVER || action == MOVE_FLAG
+                        || (action == MOVE_OPEN
+                            ? covered && (cells[cell] & MARK_MASK) == 0
+                            : !covered) ) {
+                    push( cell, action == MOVE_FLAG );
+                }
+                while ( pendingCount > 0 ) {
+                    uncover( pending[--pendingCount] );
+                }
+            }
+        } finally {
+            applying = false;
+            pendingCount = 0;
+        }
+
+        if ( cascadeCells > 0 ) {
+            long cascade_time = System.nanoTime() - start_time;
+            GameMetrics.get().cascade( cascadeCells, cascade_time );
+            Trace.record( Trace.Event.CASCADE, cascadeCells, cascade_time );
+        }
+        cascadeCells = previous_cells;
+        EdtMonitor.exit( previous );
+        repaint();
+        /* only the counters that changed, a batch of flags doesn't
+         * uncover anything */
+        if ( cellsToGo != cells_to_go ) {
+            fireCellsToGo();
+        }
+        if ( minesToMark != mines_to_mark ) {
+            fireMines();
+        }
+        if ( lost && !was_lost ) {
+            fire( lostListeners );
+        }
+        if ( won && !was_won ) {
+            fire( wonListeners );
+        }
+        BoardDelta delta = delta( first_opened, first_toggled );
+        for ( Consumer<BoardDelta> l : deltaListeners.get() ) {
+            l.accept( delta );
+        }
+        MoveResult result = new MoveResult(
+                applied,
+                Arrays.copyOfRange( opened, first_opened, openedCount ),
+                delta );
+        openedCount = first_opened;
+        toggledCount = first_toggled;
+        return result;
+    }
+
+    /**
+     * What {@link #apply(int[], byte[])} did.
+     */
+    public static final class MoveResult {
+
+        private final int applied;
+        private final int[] opened;
+        private final BoardDelta delta;
+
+        private MoveResult( int applied, int[] opened, BoardDelta delta ) {
+            this.applied = applied;
+            this.opened = opened;
+            this.delta = delta;
+        }
+
+        /**
+         * @return the number of moves applied, less than the number of
+         *         moves if the game ended before.
+         */
+        public int getApplied() {
+            return applied;
+        }
+
+        /**
+         * @return the cells uncovered, as {@code row * cols + col}, in the
+         *         order they were uncovered. The array is not shared.
+         */
+        public int[] getOpened() {
+            return opened;
+        }
+
+        /**
+         * @return the cells uncovered, with their mine counts, and the
+         *         counters after the moves.
+         */
+        public BoardDelta getDelta() {
+            return delta;
+        }
+
+        public boolean isLost() {
+            return delta.isLost();
+        }
+
+        public boolean isWon() {
+            return delta.isWon();
+        }
+
+        public int getCellsToGo() {
+            return delta.getCellsToGo();
+        }
+
+        public int getMinesToMark() {
+            return delta.getMinesToMark();
+        }
+    }
+
+    /**
+     * Pushes the cell under the mouse, when the button is released on the
+     * same cell it was pressed.
+     */
+    private class CellMouseListener extends MouseAdapter {
+
+        private int pressedRow = -1, pressedCol = -1;
+
+        private int rowAt( MouseEvent e ) {
+            /* floor, so a drag above the board is not taken for row 0 */
+            return Math.floorDiv( e.getY(), cellSize() );
+        }
+
+        private int colAt( MouseEvent e, int r ) {
+            int size = cellSize();
+            return Math.floorDiv( e.getX() - cellX( r, 0, size ), size );
         }
 
         @Override
-        public void actionPerformed( ActionEvent e ) {
+        public void mousePressed( MouseEvent e ) {
+            if ( SwingUtilities.isLeftMouseButton( e ) ) {
+                pressedRow = rowAt( e );
+                pressedCol = colAt( e, pressedRow );
+            }
+        }
 
-            if ( lost || won ) {
-                /* finished game */
-                LOGGER.info( INTL.getString( "ALREADY_FINISHED" ) );
+        @Override
+        public void mouseReleased( MouseEvent e ) {
+            if ( !SwingUtilities.isLeftMouseButton( e ) ) {
                 return;
             }
+            int r = rowAt( e ),
+                    c = colAt( e, r );
+            if ( r == pressedRow && c == pressedCol
+                    && isCellInBoard( r, c ) ) {
+                GameMetrics.get().click();
+                clearHint();
+                if ( pendingUncovers == 0 ) {
+                    cascadeCells = 0;
+                    openedCount = 0;
+                    toggledCount = 0;
+                    cascadeStart = System.nanoTime();
+                    beforeCascade = EdtMonitor.enter(
+                            EdtMonitor.Operation.CASCADE );
+                }
+                push( index( r, c ), e.isShiftDown() );
+                if ( pendingUncovers == 0 ) {
+                    cascadeDone();
+                }
+            }
+            pressedRow = pressedCol = -1;
+        }
+    }
 
-            byte cell_value = cells[r][c];
+    /**
+     * Runs {@code uncovers} later, in the event dispatch thread, as part
+     * of the cascade of the last click.
+     */
+    private void later( Runnable uncovers ) {
+        pendingUncovers++;
+        EventQueue.invokeLater( () -> {
+            uncovers.run();
+            if ( --pendingUncovers == 0 ) {
+                cascadeDone();
+            }
+        } );
+    }
 
-            if ( (cell_value & ALREADY_OPENED) != 0 ) {
-                /* already open */
-                if ( (cell_value & MINES_MASK) > 0 ) {
-                    int marked = 0;
-                    if ( isMarked( r - 1, c - 1 ) ) {
-                        marked++;
-                    }
-                    if ( isMarked( r - 1, c ) ) {
-                        marked++;
-                    }
-                    if ( isMarked( r - 1, c + 1 ) ) {
-                        marked++;
-                    }
-                    if ( isMarked( r, c - 1 ) ) {
-                        marked++;
-                    }
-                    if ( isMarked( r, c + 1 ) ) {
-                        marked++;
-                    }
-                    if ( isMarked( r + 1, c - 1 ) ) {
-                        marked++;
-                    }
-                    if ( isMarked( r + 1, c ) ) {
-                        marked++;
-                    }
-                    if ( isMarked( r + 1, c + 1 ) ) {
-                        marked++;
-                    }
-                    if ( marked == (cell_value & MINES_MASK) ) {
-                        EventQueue.invokeLater( () -> {
-                            /* change the ActionEvent into an appropiate one */
-                            ActionEvent e2 = new ActionEvent(
-                                    this,
-                                    ActionEvent.ACTION_PERFORMED,
-                                    "openflagged" );
-                            if ( !isMarked( r - 1, c - 1 ) ) {
-                                uncover( r - 1, c - 1, e2 );
-                            }
-                            if ( !isMarked( r - 1, c ) ) {
-                                uncover( r - 1, c, e2 );
-                            }
-                            if ( !isMarked( r - 1, c + 1 ) ) {
-                                uncover( r - 1, c + 1, e2 );
-                            }
-                            if ( !isMarked( r, c - 1 ) ) {
-                                uncover( r, c - 1, e2 );
-                            }
-                            if ( !isMarked( r, c + 1 ) ) {
-                                uncover( r, c + 1, e2 );
-                            }
-                            if ( !isMarked( r + 1, c - 1 ) ) {
-                                uncover( r + 1, c - 1, e2 );
-                            }
-                            if ( !isMarked( r + 1, c ) ) {
-                                uncover( r + 1, c, e2 );
-                            }
-                            if ( !isMarked( r + 1, c + 1 ) ) {
-                                uncover( r + 1, c + 1, e2 );
-                            }
-                        } );
+    private void cascadeDone() {
+        EdtMonitor.exit( beforeCascade );
+        if ( cascadeCells > 0 ) {
+            long cascade_time = System.nanoTime() - cascadeStart;
+            GameMetrics.get().cascade( cascadeCells, cascade_time );
+            Trace.record( Trace.Event.CASCADE, cascadeCells, cascade_time );
+        }
+        fireDelta();
+    }
+
+    /**
+     * @return the delta of the cells uncovered from {@code first_opened}
+     *         on, and of the cells flagged from {@code first_toggled} on.
+     */
+    private BoardDelta delta( int first_opened, int first_toggled ) {
+        return BoardDelta.of(
+                game, opened, first_opened, openedCount,
+                toggled, first_toggled, toggledCount,
+                this::minesAround,
+                move -> (cells[index( move / cols, move % cols )]
+                         & MARK_MASK) != 0,
+                exploded, cellsToGo, minesToMark, lost, won );
+    }
+
+    private void fireDelta() {
+        Consumer<BoardDelta>[] listeners = deltaListeners.get();
+        if ( listeners.length > 0 ) {
+            BoardDelta delta = delta( 0, 0 );
+            for ( Consumer<BoardDelta> l : listeners ) {
+                l.accept( delta );
+            }
+        }
+    }
+
+    private void uncover( final int cell ) {
+
+        /* the border looks already opened */
+        if ( (cells[cell] & ALREADY_OPENED) == 0 ) {
+            push( cell, false );
+        }
+    }
+
+    /**
+     * Uncovers the neighbours of {@code cell} (only the ones not flagged,
+     * if told so): later, as part of the cascade of the last click, or
+     * once the current move is done if applying {@link #apply(int[],
+     * byte[]) moves}.
+     */
+    private void uncoverAround( int cell, boolean skip_flagged ) {
+        int first = start[cell],
+                end = start[cell + 1];
+        if ( applying ) {
+            for ( int k = first; k < end; k++ ) {
+                if ( !skip_flagged || (cells[adjacent[k]] & MARK_MASK) == 0 ) {
+                    if ( pendingCount == pending.length ) {
+                        pending = Arrays.copyOf( pending, 2 * pendingCount );
                     }
-                    return;
+                    pending[pendingCount++] = adjacent[k];
                 }
-                LOGGER.info(
-                        format(
-                                INTL.getString( "ALREADY_OPENED" ),
-                                r,
-                                c ) );
-                return;
             }
-
-            if ( (e.getModifiers() & ActionEvent.SHIFT_MASK) != 0
-                    || (cell_value & MARK_MASK) != 0 ) {
-                /* switch marked mine */
-                cells[r][c] ^= MARK_MASK;
-                pushbuttonActionSupport[r][c].setIcon(
-                        (cell_value & MARK_MASK) == 0
-                                ? flagged
-                                : null );
-                int old_val = minesToMark;
-                minesToMark += (cell_value & MARK_MASK) == 0
-                        ? -1
-                        : +1;
-                propertyChangeSupport
-                        .firePropertyChange(
-                                PROPERTY_MINES,
-                                old_val, minesToMark );
-                return;
+            return;
+        }
+        later( () -> {
+            for ( int k = first; k < end; k++ ) {
+                if ( !skip_flagged || (cells[adjacent[k]] & MARK_MASK) == 0 ) {
+                    uncover( adjacent[k] );
+                }
             }
+        } );
+    }
 
-            b.setBorderPainted( false );
-
-            if ( cell_value == MINE ) {
-                /* We hit a mine */
-                b.setIcon( exploded );
-                b.setBackground( Color.white );
-                lost = true;
-                for ( int r = 0; r < rows; r++ ) {
-                    for ( int c = 0; c < cols; c++ ) {
-                        final JButton to_change =
-                                pushbuttonActionSupport[r][c];
-                        final int the_cell = cells[r][c] & (MARK_MASK | MINE);
-
-                        if ( to_change != b ) {
-                            switch ( the_cell ) {
-                            case MARK_MASK: // MARK_MASK and no MINE
-                                EventQueue.invokeLater( () -> {
-                                    to_change.setIcon( questionMark );
-                                } );
-                                break;
-                            case MINE: // MINE and not MARK_MASK
-                                EventQueue.invokeLater( () -> {
-                                    to_change.setIcon( mine );
-                                } );
-                                break;
-                            }
-                        }
-                    }
+    /**
+     * Pushes a cell: uncovers it, or flags it if {@code flag}, or
+     * uncovers its neighbours if it is already uncovered and all its
+     * mines are flagged.
+     */
+    private void push( final int cell, final boolean flag ) {
+
+        if ( lost || won ) {
+            /* finished game */
+            Trace.record( Trace.Event.ALREADY_FINISHED,
+                          rowOf( cell ), colOf( cell ) );
+            return;
+        }
+        Trace.record( Trace.Event.PUSH, rowOf( cell ), colOf( cell ) );
+
+        byte cell_value = cells[cell];
+
+        if ( (cell_value & ALREADY_OPENED) != 0 ) {
+            /* already open */
+            if ( (cell_value & MINES_MASK) > 0 ) {
+                int marked = 0,
+                        first = start[cell],
+                        end = start[cell + 1];
+                for ( int k = first; k < end; k++ ) {
+                    marked += (cells[adjacent[k]] & MARK_MASK) >>> 5;
+                }
+                if ( marked == (cell_value & MINES_MASK) ) {
+                    uncoverAround( cell, true );
                 }
-                propertyChangeSupport
-                        .firePropertyChange( PROPERTY_LOST,
-                                             false, lost );
                 return;
             }
+            Trace.record( Trace.Event.ALREADY_OPENED,
+                          rowOf( cell ), colOf( cell ) );
+            return;
+        }
 
-            /* not already open
-             * not a mine, and covered, uncover */
-            int surrounding = cell_value & MINES_MASK;
-            b.setBackground( bg[surrounding] );
-            if ( surrounding >= 6 ) {
-                b.setForeground( Color.WHITE );
+        if ( flag || (cell_value & MARK_MASK) != 0 ) {
+            /* switch marked mine */
+            Trace.record( Trace.Event.FLAG, rowOf( cell ), colOf( cell ) );
+            long stamp = lock.writeLock();
+            cells[cell] ^= MARK_MASK;
+            minesToMark += (cell_value & MARK_MASK) == 0
+                    ? -1
+                    : +1;
+            version++;
+            changedLeaves.set( cell >>> BoardSnapshot.LEAF_BITS );
+            lock.unlockWrite( stamp );
+            setShown( cell,
+                      (cell_value & MARK_MASK) == 0
+                              ? CellSprites.FLAGGED
+                              : CellSprites.HIDDEN );
+            if ( toggledCount == toggled.length ) {
+                toggled = Arrays.copyOf( toggled, 2 * toggledCount );
             }
-            if ( surrounding > 0 ) {
-                b.setText( format( "{0}", surrounding ) );
+            toggled[toggledCount++] = rowOf( cell ) * cols + colOf( cell );
+            if ( !applying ) {
+                fireMines();
             }
+            return;
+        }
 
-            int old = cellsToGo--;
-
-            propertyChangeSupport
-                    .firePropertyChange(
-                            PROPERTY_CELLS_TO_GO,
-                            old, cellsToGo );
-            if ( cellsToGo == 0 && !won ) {
-                won = true;
-                propertyChangeSupport
-                        .firePropertyChange( PROPERTY_WON,
-                                             false, true );
-                return;
+        if ( (cell_value & MINE) != 0 ) {
+            /* We hit a mine */
+            Trace.record( Trace.Event.EXPLODED,
+                          rowOf( cell ), colOf( cell ) );
+            exploded = rowOf( cell ) * cols + colOf( cell );
+            long stamp = lock.writeLock();
+            lost = true;
+            version++;
+            lock.unlockWrite( stamp );
+            for ( int r = 0; r < rows; r++ ) {
+                for ( int i = index( r, 0 ), end = i + cols; i < end; i++ ) {
+                    final int the_cell = cells[i] & (MARK_MASK | MINE);
+
+                    if ( i != cell ) {
+                        switch ( the_cell ) {
+                        case MARK_MASK: // MARK_MASK and no MINE
+                            touch( i );
+                            shown[i] = CellSprites.QUESTION;
+                            break;
+                        case MINE: // MINE and not MARK_MASK
+                            touch( i );
+                            shown[i] = CellSprites.MINE;
+                            break;
+                        }
+                    }
+                }
             }
+            touch( cell );
+            shown[cell] = CellSprites.EXPLODED;
+            repaint();
+            if ( !applying ) {
+                fire( lostListeners );
+            }
+            return;
+        }
 
-            cells[r][c] |= ALREADY_OPENED;
-            if ( surrounding == 0 ) {
-                /* surrounding == 0, uncover all surrounding */
-                EventQueue.invokeLater( () -> {
-                    uncover( r - 1, c - 1, e );
-                    uncover( r - 1, c, e );
-                    uncover( r - 1, c + 1, e );
-                    uncover( r, c - 1, e );
-                    uncover( r, c + 1, e );
-                    uncover( r + 1, c - 1, e );
-                    uncover( r + 1, c, e );
-                    uncover( r + 1, c + 1, e );
-                } );
+        /* not already open
+         * not a mine, and covered, uncover */
+        int surrounding = cell_value & MINES_MASK;
+        setShown( cell, CellSprites.OPEN + surrounding );
+        cascadeCells++;
+
+        long stamp = lock.writeLock();
+        cells[cell] |= ALREADY_OPENED;
+        cellsToGo--;
+        boolean just_won = cellsToGo == 0 && !won;
+        won |= just_won;
+        version++;
+        changedLeaves.set( cell >>> BoardSnapshot.LEAF_BITS );
+        lock.unlockWrite( stamp );
+        if ( openedCount == opened.length ) {
+            opened = Arrays.copyOf( opened, 2 * openedCount );
+        }
+        opened[openedCount++] = rowOf( cell ) * cols + colOf( cell );
+        if ( !applying ) {
+            fireCellsToGo();
+        }
+        if ( just_won ) {
+            Trace.record( Trace.Event.WON, rowOf( cell ), colOf( cell ) );
+            if ( !applying ) {
+                fire( wonListeners );
             }
+            return;
+        }
+
+        if ( surrounding == 0 ) {
+            /* surrounding == 0, uncover all surrounding */
+            uncoverAround( cell, false );
+        }
+    }
+
+    private void fireCellsToGo() {
+        for ( IntConsumer l : cellsToGoListeners.get() ) {
+            l.accept( cellsToGo );
+        }
+    }
+
+    private void fireMines() {
+        for ( IntConsumer l : minesListeners.get() ) {
+            l.accept( minesToMark );
+        }
+    }
+
+    private static void fire( Listeners<Runnable> listeners ) {
+        for ( Runnable l : listeners.get() ) {
+            l.run();
+        }
+    }
+
+    /**
+     * Registers a listener of the number of cells to uncover, called with
+     * the new number each time it changes and on {@link #init()}.
+     */
+    public void addCellsToGoListener( IntConsumer listener ) {
+        cellsToGoListeners.add( listener );
+    }
+
+    public void removeCellsToGoListener( IntConsumer listener ) {
+        cellsToGoListeners.remove( listener );
+    }
+
+    /**
+     * Registers a listener of the number of mines to mark, called with
+     * the new number each time it changes and on {@link #init()}.
+     */
+    public void addMinesListener( IntConsumer listener ) {
+        minesListeners.add( listener );
+    }
+
+    public void removeMinesListener( IntConsumer listener ) {
+        minesListeners.remove( listener );
+    }
+
+    /**
+     * Registers a listener called when the last cell is uncovered.
+     */
+    public void addWonListener( Runnable listener ) {
+        wonListeners.add( listener );
+    }
+
+    public void removeWonListener( Runnable listener ) {
+        wonListeners.remove( listener );
+    }
+
+    /**
+     * Registers a listener called when a mine is uncovered.
+     */
+    public void addLostListener( Runnable listener ) {
+        lostListeners.add( listener );
+    }
+
+    public void removeLostListener( Runnable listener ) {
+        lostListeners.remove( listener );
+    }
+
+    /**
+     * Registers a listener of the changes of the board, called with a
+     * {@link BoardDelta} after each click (once its cascade is done), each
+     * batch of {@link #apply(int[], byte[]) moves} and on
+     * {@link #init()}.
+     */
+    public void addDeltaListener( Consumer<BoardDelta> listener ) {
+        deltaListeners.add( listener );
+    }
+
+    public void removeDeltaListener( Consumer<BoardDelta> listener ) {
+        deltaListeners.remove( listener );
+    }
+
+    /**
+     * Adapts a {@link PropertyChangeListener} of one of the board
+     * properties to the listeners above. The events have no old value.
+     * Adapters are equal if they adapt the same listener of the same
+     * property, so the one to remove can be found.
+     */
+    private class PropertyAdapter implements IntConsumer, Runnable {
+
+        final String property;
+        final PropertyChangeListener listener;
+
+        PropertyAdapter( String property, PropertyChangeListener listener ) {
+            this.property = property;
+            this.listener = listener;
+        }
+
+        @Override
+        public void accept( int value ) {
+            listener.propertyChange( new PropertyChangeEvent(
+                    MineSweeper.this, property, null, value ) );
+        }
+
+        @Override
+        public void run() {
+            listener.propertyChange( new PropertyChangeEvent(
+                    MineSweeper.this, property, false, true ) );
+        }
+
+        @Override
+        public boolean equals( Object o ) {
+            return o instanceof PropertyAdapter
+                    && property.equals( ((PropertyAdapter) o).property )
+                    && listener.equals( ((PropertyAdapter) o).listener );
+        }
+
+        @Override
+        public int hashCode() {
+            return property.hashCode() ^ listener.hashCode();
+        }
+    }
+
+    /**
+     * @return the listeners of a board property, {@code null} if it is
+     *         not one of them.
+     */
+    private Listeners<? super PropertyAdapter> listenersOf(
+            String property ) {
+        if ( property == null ) {
+            return null;
+        }
+        switch ( property ) {
+        case PROPERTY_CELLS_TO_GO:
+            return cellsToGoListeners;
+        case PROPERTY_MINES:
+            return minesListeners;
+        case PROPERTY_WON:
+            return wonListeners;
+        case PROPERTY_LOST:
+            return lostListeners;
+        default:
+            return null;
         }
     }
 
+    /**
+     * Listeners of the other properties go to the {@link JPanel}.
+     */
     @Override
     public void addPropertyChangeListener(
             String property,
             PropertyChangeListener listener
     ) {
-        propertyChangeSupport.addPropertyChangeListener(
-                property, listener );
+        Listeners<? super PropertyAdapter> listeners
+                = listenersOf( property );
+        if ( listeners != null ) {
+            listeners.add( new PropertyAdapter( property, listener ) );
+        } else {
+            super.addPropertyChangeListener( property, listener );
+        }
+    }
+
+    /**
+     * @return the number of listeners of a board property, however they
+     *         were registered, or {@code -1} if it is not one of them.
+     */
+    int getListenerCount( String property ) {
+        Listeners<? super PropertyAdapter> listeners
+                = listenersOf( property );
+        return listeners == null ? -1 : listeners.get().length;
+    }
+
+    @Override
+    public PropertyChangeListener[] getPropertyChangeListeners(
+            String property ) {
+        Listeners<? super PropertyAdapter> listeners
+                = listenersOf( property );
+        if ( listeners == null ) {
+            return super.getPropertyChangeListeners( property );
+        }
+        return Arrays.stream( listeners.get() )
+                .filter( l -> l instanceof PropertyAdapter )
+                .map( l -> ((PropertyAdapter) l).listener )
+                .toArray( PropertyChangeListener[]::new );
     }
 
     @Override
@@ -439,15 +1159,12 @@ public class MineSweeper extends JPanel {
             String property,
             PropertyChangeListener listener
     ) {
-        propertyChangeSupport
-                .removePropertyChangeListener(
-                        property, listener );
-    }
-
-
-    private void incrementSurroundingCellAt( int r, int c ) {
-        if ( isCellInBoard( r, c ) && cells[r][c] != MINE ) {
-            cells[r][c]++;
+        Listeners<? super PropertyAdapter> listeners
+                = listenersOf( property );
+        if ( listeners != null ) {
+            listeners.remove( new PropertyAdapter( property, listener ) );
+        } else {
+            super.removePropertyChangeListener( property, listener );
         }
     }
 
@@ -467,10 +1184,55 @@ public class MineSweeper extends JPanel {
         return cols;
     }
 
+    public Topology getTopology() {
+        return topology;
+    }
+
     public boolean isLost() {
         return lost;
     }
 
+    public boolean isWon() {
+        return won;
+    }
+
+    /**
+     * Takes a snapshot of the game, from any thread. It copies only the
+     * cells changed since the last snapshot, if any, and it never blocks
+     * the game for longer than that copy.
+     *
+     * @return the snapshot.
+     */
+    public BoardSnapshot snapshot() {
+        long stamp = lock.tryOptimisticRead();
+        BoardSnapshot last = snapshot;
+        if ( last != null && last.getVersion() == version
+                && lock.validate( stamp ) ) {
+            return last;
+        }
+        synchronized ( snapshotLock ) {
+            stamp = lock.readLock();
+            try {
+                last = snapshot;
+                if ( last == null ) {
+                    last = BoardSnapshot.of(
+                            version, game, rows, cols, topology, cells,
+                            start, adjacent, cellsToGo, minesToMark, lost,
+                            won );
+                } else if ( last.getVersion() != version ) {
+                    last = last.updated(
+                            version, game, cells, changedLeaves,
+                            cellsToGo, minesToMark, lost, won );
+                }
+                changedLeaves.clear();
+            } finally {
+                lock.unlockRead( stamp );
+            }
+            snapshot = last;
+            return last;
+        }
+    }
+
     private void line( StringBuilder sb ) {
         sb.append( "+" );
         for ( int c = 0; c < cols; c++ ) {
@@ -486,13 +1248,14 @@ public class MineSweeper extends JPanel {
         for ( int r = 0; r < rows; r++ ) {
             sb.append( "|" );
             for ( int c = 0; c < cols; c++ ) {
-                if ( cells[r][c] == MINE ) {
+                byte cell = cells[index( r, c )];
+                if ( (cell & MINE) != 0 ) {
                     sb.append( " @" );
-                } else if ( (cells[r][c] & MINES_MASK) == 0 ) {
+                } else if ( (cell & MINES_MASK) == 0 ) {
                     sb.append( "  " );
                 } else {
                     sb.append( format( " {0}",
-                                       cells[r][c] & MINES_MASK ) );
+                                       cell & MINES_MASK ) );
                 }
             }
             sb.append( " |\n" );
@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2023, lcu
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package es.lcssl.games.ms;
+
+import es.lcssl.games.ms.HallOfFameModel.Score;
+
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Insets;
+import java.util.Date;
+import javax.swing.JComponent;
+import javax.swing.JList;
+import javax.swing.ListCellRenderer;
+import javax.swing.UIManager;
+import javax.swing.border.Border;
+import javax.swing.border.EmptyBorder;
+
+/**
+ * Renders the scores of a hall of fame list. Unlike the default renderer
+ * it does not format (nor parse as HTML) the {@link Score#toString()} of
+ * each row on every repaint: it draws the pieces of text, formatted once
+ * by each {@link Score}, directly with the colors of the
+ * {@code SCORE_TOSTRING_FORMAT}, and the position digits from a reused
+ * buffer, so painting a row does not allocate.
+ *
+ * <p>
+ * All the rows have the same size, so {@link #install(JList)} fixes the
+ * cell metrics of the list, and Swing does not have to measure each
+ * element of the model. As the default renderer, it takes the background,
+ * the selection colors and the cell borders from the list and the look
+ * and feel; the colors of the pieces of text are lightened on dark
+ * backgrounds, and not used on selected rows.
+ *
+ * @author lcu
+ */
+public class ScoreCellRenderer extends JComponent
+        implements ListCellRenderer<Score> {
+
+    /**
+     * Colors of the position, the player, the date and the score, on
+     * light and on dark backgrounds.
+     */
+    private static final Color[] LIGHT_COLORS = {
+        new Color( 0x008000 ), new Color( 0x000080 ),
+        Color.RED, Color.ORANGE };
+    private static final Color[] DARK_COLORS = {
+        new Color( 0x60d060 ), new Color( 0x80a0ff ),
+        new Color( 0xff7070 ), Color.ORANGE };
+    private static final int POSITION = 0, WHO = 1, WHEN = 2, SCORE = 3;
+    private static final String SEP = " - ";
+    private static final Border DEFAULT_NO_FOCUS_BORDER
+            = new EmptyBorder( 1, 1, 1, 1 );
+
+    /**
+     * The widest texts we expect, to size the cells.
+     */
+    private static final String PROTOTYPE_POSITION = "0000000: ";
+    private static final String PROTOTYPE_WHO = "MMMMMMMMMMMM";
+    private static final String PROTOTYPE_WHEN = new Date( 0 ).toString();
+    private static final String PROTOTYPE_SCORE
+            = Chronograph.toString( 23 * 3_600_000L + 3_599_999L );
+
+    private final char[] position = new char[ 12 ];
+    private int positionStart;
+    private Score score;
+    private boolean selected;
+    private Color[] colors = LIGHT_COLORS;
+    private Color colorsFor;
+    private Font scoreFont;
+
+    public ScoreCellRenderer() {
+        setOpaque( true );
+        setBorder( noFocusBorder() );
+    }
+
+    private static Border noFocusBorder() {
+        Border border = UIManager.getBorder( "List.cellNoFocusBorder" );
+        return border != null ? border : DEFAULT_NO_FOCUS_BORDER;
+    }
+
+    /**
+     * Sets this renderer in {@code list}, and fixes its cell metrics.
+     */
+    public void install( JList<Score> list ) {
+        list.setCellRenderer( this );
+        setBorder( noFocusBorder() );
+        setFont( list.getFont() );
+        Dimension d = getPreferredSize();
+        list.setFixedCellWidth( d.width );
+        list.setFixedCellHeight( d.height );
+    }
+
+    @Override
+    public void setFont( Font font ) {
+        super.setFont( font );
+        scoreFont = font == null
+                ? null
+                : font.deriveFont( font.getSize2D() * 1.5f );
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        Font font = getFont();
+        if ( font == null ) {
+            return super.getPreferredSize();
+        }
+        FontMetrics fm = getFontMetrics( font ),
+                sfm = getFontMetrics( scoreFont );
+        int width = fm.stringWidth( PROTOTYPE_POSITION )
+                + fm.stringWidth( PROTOTYPE_WHO )
+                + 2 * fm.stringWidth( SEP )
+                + fm.stringWidth( PROTOTYPE_WHEN )
+                + sfm.stringWidth( PROTOTYPE_SCORE );
+        Insets in = getInsets();
+        return new Dimension( width + in.left + in.right,
+                              Math.max( fm.getHeight(), sfm.getHeight() )
+                              + in.top + in.bottom );
+    }
+
+    @Override
+    public Component getListCellRendererComponent(
+            JList<? extends Score> list,
+            Score value,
+            int index,
+            boolean isSelected,
+            boolean cellHasFocus ) {
+
+        if ( list.getFont() != getFont() ) {
+            setFont( list.getFont() );
+        }
+        setBackground( isSelected
+                ? list.getSelectionBackground()
+                : list.getBackground() );
+        setForeground( isSelected
+                ? list.getSelectionForeground()
+                : list.getForeground() );
+        setEnabled( list.isEnabled() );
+        Border border = cellHasFocus
+                ? UIManager.getBorder( isSelected
+                        ? "List.focusSelectedCellHighlightBorder"
+                        : "List.focusCellHighlightBorder" )
+                : null;
+        setBorder( border != null ? border : noFocusBorder() );
+        if ( list.getBackground() != colorsFor ) {
+            /* perceived brightness of the background */
+            Color bg = list.getBackground();
+            colorsFor = bg;
+            colors = bg != null && 299 * bg.getRed() + 587 * bg.getGreen()
+                    + 114 * bg.getBlue() < 128_000
+                    ? DARK_COLORS
+                    : LIGHT_COLORS;
+        }
+        score = value;
+        selected = isSelected;
+        /* index + 1 is the position, as set by getElementAt() */
+        int n = index + 1, i = position.length;
+        position[ --i ] = ' ';
+        position[ --i ] = ':';
+        do {
+            position[ --i ] = (char) ('0' + n % 10);
+            n /= 10;
+        } while ( n > 0 );
+        positionStart = i;
+        return this;
+    }
+
+    @Override
+    protected void paintComponent( Graphics g ) {
+        g.setColor( getBackground() );
+        g.fillRect( 0, 0, getWidth(), getHeight() );
+        if ( score == null ) {
+            return;
+        }
+        Font font = getFont();
+        FontMetrics fm = g.getFontMetrics( font ),
+                sfm = g.getFontMetrics( scoreFont );
+        Insets in = getInsets();
+        int base = in.top + Math.max( fm.getAscent(), sfm.getAscent() ),
+                x = in.left;
+        g.setFont( font );
+        g.setColor( color( POSITION ) );
+        g.drawChars( position, positionStart,
+                     position.length - positionStart, x, base );
+        x += fm.charsWidth( position, positionStart,
+                            position.length - positionStart );
+        x = draw( g, fm, score.getWho(), color( WHO ), x, base );
+        x = draw( g, fm, SEP, getForeground(), x, base );
+        x = draw( g, fm, score.getWhenAsString(), color( WHEN ), x, base );
+        x = draw( g, fm, SEP, getForeground(), x, base );
+        g.setFont( scoreFont );
+        draw( g, sfm, score.getScoreAsString(), color( SCORE ), x, base );
+    }
+
+    /**
+     * @return the color of a piece of text: the foreground of the list if
+     *         the row is selected, or the list disabled.
+     */
+    private Color color( int piece ) {
+        return selected || !isEnabled() ? getForeground() : colors[ piece ];
+    }
+
+    private int draw( Graphics g, FontMetrics fm, String text, Color color,
+            int x, int base ) {
+        g.setColor( color );
+        g.drawString( text, x, base );
+        return x + fm.stringWidth( text );
+    }
+}
@@ -0,0 +1,361 @@
+/*
+ * Copyright (c) 2023, lcu
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package es.lcssl.games.ms;
+
+import es.lcssl.games.ms.HallOfFameModel.Score;
+import es.lcssl.games.ms.HallOfFameModel.Tail;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.stream.IntStream;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Binary, memory mapped, sorted index of the scores of a board
+ * configuration. The index file has a small header followed by fixed width
+ * records, sorted in the same order as {@link Score#compareTo(Score)}, so
+ * any record can be accessed (or searched) directly in the mapped file,
+ * without reading the others. The header stores:
+ *
+ * <ul>
+ * <li>the table of player names (records refer to it by number),
+ * <li>how far each text score file had been read when the index was
+ * written, so only the lines appended after that have to be parsed, and
+ * <li>the generation of the {@link ScoreSegment} it includes, as the index
+ * is useless once the score files are compacted again.
+ * </ul>
+ *
+ * Each record is the score (8 bytes), the timestamp (8 bytes) and the
+ * index of the player name (4 bytes). The records are followed by a
+ * secondary index: the record numbers (4 bytes each) sorted by timestamp,
+ * to search scores by date.
+ *
+ * @author lcu
+ */
+class ScoreIndex {
+
+    private static final ResourceBundle INTL
+            = ResourceBundle.getBundle( ScoreIndex.class.getName() );
+
+    private static final int MAGIC = 0x4d534958; /* "MSIX" */
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 24;
+    private static final int RECORD_SIZE = 20;
+    private static final int OFFSET_WHEN = 8;
+    private static final int OFFSET_WHO = 16;
+    private static final int WHEN_ENTRY_SIZE = 4;
+
+    private final File file;
+    private final ByteBuffer records;
+    private final int size;
+    private final long generation;
+    private final String[] names;
+    private final Map<String, Tail> tails;
+
+    private ScoreIndex( File file, ByteBuffer records, int size,
+            long generation, String[] names, Map<String, Tail> tails ) {
+        this.file = file;
+        this.records = records;
+        this.size = size;
+        this.generation = generation;
+        this.names = names;
+        this.tails = tails;
+    }
+
+    /**
+     * Maps an index file in memory.
+     *
+     * @param file the index file.
+     * @return the index.
+     * @throws IOException if the file cannot be read or it is not a valid
+     *                     index.
+     */
+    public static ScoreIndex open( File file ) throws IOException {
+
+        ByteBuffer map;
+        try ( FileChannel ch = FileChannel.open(
+                file.toPath(), StandardOpenOption.READ ) ) {
+            if ( ch.size() < HEADER_SIZE || ch.size() > Integer.MAX_VALUE ) {
+                throw new IOException( format(
+                        INTL.getString( "BAD_INDEX" ), file ) );
+            }
+            /* the mapping remains valid after closing the channel */
+            map = ch.map( FileChannel.MapMode.READ_ONLY, 0, ch.size() );
+        }
+        int records_offset = map.getInt( 8 ),
+                size = map.getInt( 12 );
+        if ( map.getInt( 0 ) != MAGIC
+                || map.getInt( 4 ) != VERSION
+                || records_offset < HEADER_SIZE
+                || size < 0
+                || records_offset
+                + (long) size * (RECORD_SIZE + WHEN_ENTRY_SIZE)
+                != map.capacity() ) {
+            throw new IOException( format(
+                    INTL.getString( "BAD_INDEX" ), file ) );
+        }
+
+        byte[] header = new byte[ records_offset - HEADER_SIZE ];
+        map.position( HEADER_SIZE );
+        map.get( header );
+        DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream( header ) );
+        String[] names = new String[ in.readInt() ];
+        for ( int i = 0; i < names.length; i++ ) {
+            names[ i ] = in.readUTF();
+        }
+        Map<String, Tail> tails = new HashMap<>();
+        for ( int n = in.readInt(); n > 0; n-- ) {
+            Tail tail = new Tail();
+            String name = in.readUTF();
+            tail.offset = in.readLong();
+            tail.lineNo = in.readInt();
+            tails.put( name, tail );
+        }
+
+        map.position( records_offset );
+        return new ScoreIndex( file, map.slice(), size, map.getLong( 16 ),
+                               names,
+                               Collections.unmodifiableMap( tails ) );
+    }
+
+    /**
+     * Writes an index file. The file is written aside and then renamed,
+     * so readers never see a partially written index.
+     *
+     * @param file   the index file.
+     * @param sorted the scores to store, already sorted.
+     * @param tails  how far each score file had been read.
+     * @param generation the generation of the segment included.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void write(
+            File file,
+            List<Score> sorted,
+            Map<String, Tail> tails,
+            long generation ) throws IOException {
+
+        Map<String, Integer> names = new LinkedHashMap<>();
+        for ( Score s : sorted ) {
+            names.computeIfAbsent( s.getWho(), n -> names.size() );
+        }
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream hdr = new DataOutputStream( header );
+        hdr.writeInt( names.size() );
+        for ( String name : names.keySet() ) {
+            hdr.writeUTF( name );
+        }
+        hdr.writeInt( tails.size() );
+        for ( Map.Entry<String, Tail> e : tails.entrySet() ) {
+            hdr.writeUTF( e.getKey() );
+            hdr.writeLong( e.getValue().offset );
+            hdr.writeInt( e.getValue().lineNo );
+        }
+        hdr.flush();
+
+        Path tmp = ScoreSegment.createTemp( file );
+        boolean moved = false;
+        try {
+            try ( DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(
+                            new FileOutputStream( tmp.toFile() ) ) ) ) {
+                out.writeInt( MAGIC );
+                out.writeInt( VERSION );
+                out.writeInt( HEADER_SIZE + header.size() );
+                out.writeInt( sorted.size() );
+                out.writeLong( generation );
+                header.writeTo( out );
+                long[] whens = new long[ sorted.size() ];
+                int i = 0;
+                for ( Score s : sorted ) {
+                    out.writeLong( s.getScore() );
+                    out.writeLong( s.getWhen() );
+                    out.writeInt( names.get( s.getWho() ) );
+                    whens[ i++ ] = s.getWhen();
+                }
+                /* ties keep the order of the records */
+                int[] by_when = IntStream.range( 0, whens.length )
+                        .boxed()
+                        .sorted( ( a, b ) -> Long.compare(
+                                whens[ a ], whens[ b ] ) )
+                        .mapToInt( Integer::intValue )
+                        .toArray();
+                for ( int r : by_when ) {
+                    out.writeInt( r );
+                }
+            }
+            Files.move( tmp, file.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE );
+            moved = true;
+        } finally {
+            if ( !moved ) {
+                Files.deleteIfExists( tmp );
+            }
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the generation of the {@link ScoreSegment} included in this
+     *         index, {@code 0} if none.
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getScore( int i ) {
+        return records.getLong( i * RECORD_SIZE );
+    }
+
+    public long getWhen( int i ) {
+        return records.getLong( i * RECORD_SIZE + OFFSET_WHEN );
+    }
+
+    public String getWho( int i ) {
+        return names[ records.getInt( i * RECORD_SIZE + OFFSET_WHO ) ];
+    }
+
+    /**
+     * @return the number of the {@code k}-th record in timestamp order.
+     */
+    public int byWhen( int k ) {
+        return records.getInt( size * RECORD_SIZE + k * WHEN_ENTRY_SIZE );
+    }
+
+    /**
+     * @return the number of records with a timestamp before
+     *         {@code when}, which is also the position in timestamp order
+     *         of the first one at or after it.
+     */
+    public int whenRank( long when ) {
+        int lft = 0, rgt = size;
+        while ( lft < rgt ) {
+            int mid = (lft + rgt) >>> 1;
+            if ( getWhen( byWhen( mid ) ) < when ) {
+                lft = mid + 1;
+            } else {
+                rgt = mid;
+            }
+        }
+        return lft;
+    }
+
+    /**
+     * @return for each player name (in the order of the header), the
+     *         number of its best record, or {@code -1} if it has none.
+     */
+    public int[] bestOfEachName() {
+        int[] best = new int[ names.length ];
+        Arrays.fill( best, -1 );
+        int missing = names.length;
+        /* records are sorted, the first of each player is the best */
+        for ( int i = 0; i < size && missing > 0; i++ ) {
+            int who = records.getInt( i * RECORD_SIZE + OFFSET_WHO );
+            if ( best[ who ] < 0 ) {
+                best[ who ] = i;
+                missing--;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return how far each score file had been read when the index was
+     *         written, indexed by file name.
+     */
+    public Map<String, Tail> getTails() {
+        return tails;
+    }
+
+    /**
+     * Compares record {@code i} with a score, in the same order as
+     * {@link Score#compareTo(Score)}.
+     */
+    private int compare( int i, Score s ) {
+        int res = Long.compare( getScore( i ), s.getScore() );
+        if ( res != 0 ) {
+            return res;
+        }
+        res = Long.compare( getWhen( i ), s.getWhen() );
+        if ( res != 0 ) {
+            return res;
+        }
+        return getWho( i ).compareTo( s.getWho() );
+    }
+
+    /**
+     * @return the number of records that sort before {@code s}.
+     */
+    public int rank( Score s ) {
+        int lft = 0, rgt = size;
+        while ( lft < rgt ) {
+            int mid = (lft + rgt) >>> 1;
+            if ( compare( mid, s ) < 0 ) {
+                lft = mid + 1;
+            } else {
+                rgt = mid;
+            }
+        }
+        return lft;
+    }
+
+    /**
+     * @return {@code true} if {@code s} is stored in the index.
+     */
+    public boolean contains( Score s ) {
+        int i = rank( s );
+        return i < size && compare( i, s ) == 0;
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2023, lcu
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package es.lcssl.games.ms;
+
+import es.lcssl.games.ms.HallOfFameModel.Score;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ResourceBundle;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Compacted, sorted segment of scores of a board configuration. Segments
+ * are written by {@link HallOfFameModel#compact()} with the contents of
+ * all the score files, which are then emptied, so they only hold the
+ * scores added since the last compaction.
+ *
+ * <p>
+ * Records are sorted as in {@link Score#compareTo(Score)} and stored
+ * compressed: the score as the (never negative) difference with the
+ * previous one, the timestamp as the (zigzag encoded) difference with the
+ * previous one and the player as an index into the table of names in the
+ * header, all of them written as variable length integers. A typical
+ * record takes five or six bytes, against the thirty or more of a score
+ * file line.
+ *
+ * @author lcu
+ */
+class ScoreSegment {
+
+    private static final ResourceBundle INTL
+            = ResourceBundle.getBundle( ScoreSegment.class.getName() );
+
+    private static final int MAGIC = 0x4d535347; /* "MSSG" */
+    private static final int VERSION = 1;
+
+    /**
+     * Receives the scores read from a segment.
+     */
+    @FunctionalInterface
+    interface Sink {
+
+        void score( String who, long when, long score );
+    }
+
+    private ScoreSegment() {
+    }
+
+    /**
+     * Reads the generation of a segment, a number that changes each time
+     * the segment is written.
+     *
+     * @param file the segment file.
+     * @return the generation or {@code 0} if the segment doesn't exist.
+     * @throws IOException if the file cannot be read or it is not a
+     *                     valid segment.
+     */
+    public static long generation( File file ) throws IOException {
+
+        if ( !file.exists() ) {
+            return 0;
+        }
+        try ( DataInputStream in = new DataInputStream(
+                new BufferedInputStream(
+                        new FileInputStream( file ) ) ) ) {
+            return header( file, in );
+        }
+    }
+
+    private static long header( File file, DataInput in )
+            throws IOException {
+
+        if ( in.readInt() != MAGIC || in.readInt() != VERSION ) {
+            throw new IOException( format(
+                    INTL.getString( "BAD_SEGMENT" ), file ) );
+        }
+        return in.readLong();
+    }
+
+    /**
+     * Reads a segment, passing the scores to {@code sink} in sorted order.
+     *
+     * @return the generation of the segment.
+     */
+    public static long read( File file, Sink sink ) throws IOException {
+
+        try ( DataInputStream in = new DataInputStream(
+                new BufferedInputStream(
+                        new FileInputStream( file ) ) ) ) {
+            long generation = header( file, in );
+            String[] names = new String[ in.readInt() ];
+            for ( int i = 0; i < names.length; i++ ) {
+                names[ i ] = in.readUTF();
+            }
+            long score = 0, when = 0;
+            for ( long n = readVarLong( in ); n > 0; n-- ) {
+                score += readVarLong( in );
+                long delta = readVarLong( in );
+                when += (delta >>> 1) ^ -(delta & 1);
+                int who = (int) readVarLong( in );
+                if ( who < 0 || who >= names.length ) {
+                    throw new IOException( format(
+                            INTL.getString( "BAD_SEGMENT" ), file ) );
+                }
+                sink.score( names[ who ], when, score );
+            }
+            return generation;
+        }
+    }
+
+    /**
+     * Writes a segment. The file is written aside and then renamed, so
+     * readers never see a partially written segment.
+     *
+     * @param file       the segment file.
+     * @param sorted     the scores, sorted and without duplicates.
+     * @param generation the generation of the new segment.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void write( File file, List<Score> sorted,
+            long generation ) throws IOException {
+
+        Map<String, Integer> names = new LinkedHashMap<>();
+        for ( Score s : sorted ) {
+            names.computeIfAbsent( s.getWho(), n -> names.size() );
+        }
+
+        Path tmp = createTemp( file );
+        boolean moved = false;
+        try {
+            try ( DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(
+                            new FileOutputStream( tmp.toFile() ) ) ) ) {
+                out.writeInt( MAGIC );
+                out.writeInt( VERSION );
+                out.writeLong( generation );
+                out.writeInt( names.size() );
+                for ( String name : names.keySet() ) {
+                    out.writeUTF( name );
+                }
+                writeVarLong( out, sorted.size() );
+                long score = 0, when = 0;
+                for ( Score s : sorted ) {
+                    writeVarLong( out, s.getScore() - score );
+                    long delta = s.getWhen() - when;
+                    writeVarLong( out, (delta << 1) ^ (delta >> 63) );
+                    writeVarLong( out, names.get( s.getWho() ) );
+                    score = s.getScore();
+                    when = s.getWhen();
+                }
+            }
+            Files.move( tmp, file.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE );
+            moved = true;
+        } finally {
+            if ( !moved ) {
+                Files.deleteIfExists( tmp );
+            }
+        }
+    }
+
+    /**
+     * Creates the temporary file written before renaming it to
+     * {@code file}: one of its own in the same directory, so two writers
+     * don't clobber each other's and the rename stays atomic. It gets the
+     * permissions of {@code file}, if it exists, so the rename doesn't
+     * hide the scores from other users.
+     *
+     * @param file the file that will be replaced.
+     * @return the new empty temporary file.
+     * @throws IOException if the file cannot be created.
+     */
+    static Path createTemp( File file ) throws IOException {
+        Path tmp = Files.createTempFile( file.getParentFile().toPath(),
+                                         file.getName() + ".", ".tmp" );
+        try {
+            Files.setPosixFilePermissions( tmp,
+                    Files.getPosixFilePermissions( file.toPath() ) );
+        } catch ( NoSuchFileException | UnsupportedOperationException e ) {
+            /* a new file, or not a POSIX file system */
+        } catch ( IOException e ) {
+            Files.deleteIfExists( tmp );
+            throw e;
+        }
+        return tmp;
+    }
+
+    /**
+     * Writes {@code value} seven bits per byte, least significant first,
+     * with the high bit set in all bytes but the last.
+     */
+    static void writeVarLong( DataOutput out, long value )
+            throws IOException {
+        while ( (value & ~0x7fL) != 0 ) {
+            out.writeByte( (int) (value & 0x7f) | 0x80 );
+            value >>>= 7;
+        }
+        out.writeByte( (int) value );
+    }
+
+    static long readVarLong( DataInput in ) throws IOException {
+        long value = 0;
+        for ( int shift = 0; shift < 64; shift += 7 ) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ( (b & 0x80) == 0 ) {
+                return value;
+            }
+        }
+        throw new IOException( INTL.getString( "BAD_VARINT" ) );
+    }
+}
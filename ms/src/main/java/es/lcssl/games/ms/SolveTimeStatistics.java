@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2023, lcu
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package es.lcssl.games.ms;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Fixed size, mergeable sketch of the distribution of solve times. Times
+ * are counted in logarithmic buckets, each one {@link #RELATIVE_ACCURACY}
+ * wide relative to its times, so the quantiles it reports are within that
+ * relative error of the true ones, no matter how many times are added.
+ * Two sketches (e.g. of different players, or machines) can be merged by
+ * adding their counts.
+ *
+ * <p>
+ * This class is not thread safe.
+ *
+ * @author lcu
+ */
+public class SolveTimeStatistics implements Serializable {
+
+    /**
+     * Relative error of the quantiles.
+     */
+    public static final double RELATIVE_ACCURACY = 0.01;
+
+    /**
+     * Longest time counted on its own bucket, longer ones are counted in
+     * the last one.
+     */
+    public static final long MAX_TIME = 365 * 86_400_000L;
+
+    private static final double GAMMA
+            = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+    private static final double LOG_GAMMA = Math.log( GAMMA );
+    private static final int BUCKETS
+            = (int) Math.ceil( Math.log( MAX_TIME ) / LOG_GAMMA ) + 1;
+
+    /**
+     * {@code counts[i]} is the number of times {@code t} with
+     * {@code GAMMA^(i-1) < t <= GAMMA^i} (times up to one millisecond go
+     * to bucket 0).
+     */
+    private final long[] counts = new long[ BUCKETS ];
+    private long count;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+    private double sum;
+
+    private static int bucketOf( long time ) {
+        if ( time <= 1 ) {
+            return 0;
+        }
+        return Math.min( (int) Math.ceil( Math.log( time ) / LOG_GAMMA ),
+                         BUCKETS - 1 );
+    }
+
+    public SolveTimeStatistics() {
+    }
+
+    public SolveTimeStatistics( SolveTimeStatistics other ) {
+        merge( other );
+    }
+
+    /**
+     * Adds a solve time, in milliseconds.
+     */
+    public void add( long time ) {
+        counts[ bucketOf( time ) ]++;
+        count++;
+        min = Math.min( min, time );
+        max = Math.max( max, time );
+        sum += time;
+    }
+
+    /**
+     * Adds all the times counted by {@code other}.
+     */
+    public void merge( SolveTimeStatistics other ) {
+        for ( int i = 0; i < BUCKETS; i++ ) {
+            counts[ i ] += other.counts[ i ];
+        }
+        count += other.count;
+        min = Math.min( min, other.min );
+        max = Math.max( max, other.max );
+        sum += other.sum;
+    }
+
+    public void clear() {
+        Arrays.fill( counts, 0 );
+        count = 0;
+        min = Long.MAX_VALUE;
+        max = Long.MIN_VALUE;
+        sum = 0;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the best time, or {@code 0} if there are none.
+     */
+    public long getMin() {
+        return count == 0 ? 0 : min;
+    }
+
+    /**
+     * @return the worst time, or {@code 0} if there are none.
+     */
+    public long getMax() {
+        return count == 0 ? 0 : max;
+    }
+
+    public long getMean() {
+        return count == 0 ? 0 : Math.round( sum / count );
+    }
+
+    /**
+     * @param q the quantile, between {@code 0.0} and {@code 1.0}.
+     * @return the time below which are a fraction {@code q} of the times,
+     *         with a relative error of at most {@link #RELATIVE_ACCURACY},
+     *         or {@code 0} if there are none.
+     */
+    public long getQuantile( double q ) {
+        if ( count == 0 ) {
+            return 0;
+        }
+        long rank = (long) (q * (count - 1));
+        long seen = 0;
+        int i = 0;
+        while ( i < BUCKETS - 1 && (seen += counts[ i ]) <= rank ) {
+            i++;
+        }
+        /* the middle of the bucket, by relative error */
+        long value = i == 0
+                ? 1
+                : Math.round( 2 * Math.pow( GAMMA, i ) / (GAMMA + 1) );
+        return Math.max( min, Math.min( max, value ) );
+    }
+
+    /**
+     * @return the number of times up to {@code time}, counting all the
+     *         times in its bucket, so it may count some a bit longer, by
+     *         at most {@link #RELATIVE_ACCURACY}.
+     */
+    public long getCountUpTo( long time ) {
+        if ( count == 0 || time < min ) {
+            return 0;
+        }
+        if ( time >= max ) {
+            return count;
+        }
+        long res = 0;
+        for ( int i = 0, last = bucketOf( time ); i <= last; i++ ) {
+            res += counts[ i ];
+        }
+        return res;
+    }
+
+    public long getMedian() {
+        return getQuantile( 0.5 );
+    }
+
+    /**
+     * Groups the times between {@link #getMin()} and {@link #getMax()}
+     * into {@code bins} bins of the same logarithmic width.
+     *
+     * @return the number of times in each bin.
+     */
+    public long[] getHistogram( int bins ) {
+        long[] res = new long[ bins ];
+        if ( count == 0 ) {
+            return res;
+        }
+        int first = bucketOf( min ),
+                n = bucketOf( max ) - first + 1;
+        for ( int i = 0; i < n; i++ ) {
+            res[ (int) ((long) i * bins / n) ] += counts[ first + i ];
+        }
+        return res;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2023, lcu
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package es.lcssl.games.ms;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Insets;
+import java.util.ResourceBundle;
+import javax.swing.JPanel;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Shows the distribution of the solve times of a {@link HallOfFameModel}:
+ * a histogram and the main quantiles, taken from its
+ * {@link SolveTimeStatistics}, so it costs the same no matter how many
+ * scores the model has.
+ *
+ * @author lcu
+ */
+public class StatisticsPanel extends JPanel {
+
+    private static final ResourceBundle INTL
+            = ResourceBundle.getBundle( StatisticsPanel.class.getName() );
+
+    private static final int BINS = 40;
+
+    private final ListDataListener listener = new ListDataListener() {
+        @Override
+        public void intervalAdded( ListDataEvent e ) {
+            refresh();
+        }
+
+        @Override
+        public void intervalRemoved( ListDataEvent e ) {
+            refresh();
+        }
+
+        @Override
+        public void contentsChanged( ListDataEvent e ) {
+            refresh();
+        }
+    };
+
+    private HallOfFameModel model;
+    private SolveTimeStatistics statistics = new SolveTimeStatistics();
+
+    public StatisticsPanel() {
+        setPreferredSize( new Dimension( 200, 60 ) );
+    }
+
+    public HallOfFameModel getModel() {
+        return model;
+    }
+
+    /**
+     * Shows the statistics of {@code model}, following its changes.
+     */
+    public void setModel( HallOfFameModel model ) {
+        if ( this.model != null ) {
+            this.model.removeListDataListener( listener );
+        }
+        this.model = model;
+        if ( model != null ) {
+            model.addListDataListener( listener );
+        }
+        refresh();
+    }
+
+    private void refresh() {
+        statistics = model != null
+                ? model.getStatistics()
+                : new SolveTimeStatistics();
+        setToolTipText( statistics.getCount() == 0
+                ? null
+                : format( INTL.getString( "STATISTICS_TOOLTIP" ),
+                          Chronograph.toString( statistics.getMin() ),
+                          Chronograph.toString( statistics.getMedian() ),
+                          Chronograph.toString(
+                                  statistics.getQuantile( 0.9 ) ),
+                          Chronograph.toString(
+                                  statistics.getQuantile( 0.99 ) ),
+                          Chronograph.toString( statistics.getMax() ),
+                          statistics.getCount() ) );
+        repaint();
+    }
+
+    @Override
+    protected void paintComponent( Graphics g ) {
+        super.paintComponent( g );
+        Insets in = getInsets();
+        int width = getWidth() - in.left - in.right,
+                height = getHeight() - in.top - in.bottom;
+        long[] histogram = statistics.getHistogram( BINS );
+        long top = 0;
+        for ( long n : histogram ) {
+            top = Math.max( top, n );
+        }
+        if ( top == 0 || width <= 0 || height <= 0 ) {
+            return;
+        }
+        g.setColor( Color.ORANGE );
+        for ( int i = 0; i < BINS; i++ ) {
+            int x0 = in.left + i * width / BINS,
+                    x1 = in.left + (i + 1) * width / BINS,
+                    h = (int) (histogram[ i ] * height / top);
+            g.fillRect( x0, in.top + height - h, Math.max( x1 - x0 - 1, 1 ),
+                        h );
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2023, lcu
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package es.lcssl.games.ms;
+
+import java.util.Arrays;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * How the cells of a board are connected. Each topology only says which
+ * are the neighbours of a cell; the board asks for them once, and stores
+ * them as an {@link Adjacency} table, so the game runs the same code (and
+ * as fast) on any topology.
+ *
+ * @author lcu
+ */
+public enum Topology {
+
+    /**
+     * Square cells, each one touching the eight around it (less on the
+     * edges of the board).
+     */
+    SQUARE {
+        @Override
+        int neighbours( int r, int c, int rows, int cols,
+                int[] out_r, int[] out_c ) {
+            int n = around( r, c, out_r, out_c );
+            return inBoard( n, rows, cols, out_r, out_c );
+        }
+    },
+
+    /**
+     * Square cells, with the opposite sides of the board joined, so
+     * every cell has eight neighbours.
+     */
+    TORUS {
+        @Override
+        int neighbours( int r, int c, int rows, int cols,
+                int[] out_r, int[] out_c ) {
+            int n = around( r, c, out_r, out_c );
+            for ( int i = 0; i < n; i++ ) {
+                out_r[ i ] = Math.floorMod( out_r[ i ], rows );
+                out_c[ i ] = Math.floorMod( out_c[ i ], cols );
+            }
+            return n;
+        }
+    },
+
+    /**
+     * Hexagonal cells, each one touching six (less on the edges of the
+     * board). Odd rows are shifted half a cell to the right.
+     */
+    HEX {
+        @Override
+        int neighbours( int r, int c, int rows, int cols,
+                int[] out_r, int[] out_c ) {
+            int shift = r & 1;
+            int n = 0;
+            for ( int dr = -1; dr <= 1; dr += 2 ) {
+                out_r[ n ] = r + dr;
+                out_c[ n++ ] = c - 1 + shift;
+                out_r[ n ] = r + dr;
+                out_c[ n++ ] = c + shift;
+            }
+            out_r[ n ] = r;
+            out_c[ n++ ] = c - 1;
+            out_r[ n ] = r;
+            out_c[ n++ ] = c + 1;
+            return inBoard( n, rows, cols, out_r, out_c );
+        }
+
+        @Override
+        public boolean isShifted( int r ) {
+            return (r & 1) != 0;
+        }
+    };
+
+    /**
+     * Maximum number of neighbours of a cell, in any topology.
+     */
+    static final int MAX_NEIGHBOURS = 8;
+
+    /**
+     * Computes the neighbours of cell {@code (r, c)}. They are all in the
+     * board, but may be repeated, or the cell itself, on small boards.
+     *
+     * @return the number of neighbours stored in {@code out_r} and
+     *         {@code out_c}.
+     */
+    abstract int neighbours( int r, int c, int rows, int cols,
+            int[] out_r, int[] out_c );
+
+    /**
+     * Stores the eight cells around {@code (r, c)}, maybe outside the
+     * board.
+     *
+     * @return the number of cells stored.
+     */
+    private static int around( int r, int c, int[] out_r, int[] out_c ) {
+        int n = 0;
+        for ( int dr = -1; dr <= 1; dr++ ) {
+            for ( int dc = -1; dc <= 1; dc++ ) {
+                if ( dr != 0 || dc != 0 ) {
+                    out_r[ n ] = r + dr;
+                    out_c[ n++ ] = c + dc;
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Drops the first {@code n} cells in {@code out_r} and {@code out_c}
+     * that are outside the board, keeping the order of the others.
+     *
+     * @return the number of cells kept.
+     */
+    private static int inBoard( int n, int rows, int cols,
+            int[] out_r, int[] out_c ) {
+        int kept = 0;
+        for ( int i = 0; i < n; i++ ) {
+            if ( out_r[ i ] >= 0 && out_r[ i ] < rows
+                    && out_c[ i ] >= 0 && out_c[ i ] < cols ) {
+                out_r[ kept ] = out_r[ i ];
+                out_c[ kept++ ] = out_c[ i ];
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * @return {@code true} if row {@code r} is drawn shifted half a cell
+     *         to the right.
+     */
+    public boolean isShifted( int r ) {
+        return false;
+    }
+
+    /**
+     * Builds the adjacency table of a board.
+     *
+     * @param rows  the board rows.
+     * @param cols  the board columns.
+     * @param size  the size of the array of cells of the board.
+     * @param index gives the position in the array of cells of cell
+     *              {@code (r, c)}.
+     * @return the table.
+     */
+    Adjacency adjacency( int rows, int cols, int size,
+            IntBinaryOperator index ) {
+
+        int[] start = new int[ size + 1 ],
+                list = new int[ rows * cols * MAX_NEIGHBOURS ],
+                out_r = new int[ MAX_NEIGHBOURS ],
+                out_c = new int[ MAX_NEIGHBOURS ];
+        int n = 0, next = 0;
+        for ( int r = 0; r < rows; r++ ) {
+            for ( int c = 0; c < cols; c++ ) {
+                int cell = index.applyAsInt( r, c ),
+                        count = neighbours( r, c, rows, cols, out_r, out_c ),
+                        first = n;
+                /* cells out of the board (the border) have empty rows */
+                while ( next <= cell ) {
+                    start[ next++ ] = first;
+                }
+                for ( int i = 0; i < count; i++ ) {
+                    int neighbour = index.applyAsInt( out_r[ i ], out_c[ i ] );
+                    /* small boards may repeat neighbours, or wrap to
+                     * the cell itself */
+                    boolean repeated = neighbour == cell;
+                    for ( int j = first; j < n && !repeated; j++ ) {
+                        repeated = list[ j ] == neighbour;
+                    }
+                    if ( !repeated ) {
+                        list[ n++ ] = neighbour;
+                    }
+                }
+            }
+        }
+        while ( next <= size ) {
+            start[ next++ ] = n;
+        }
+        return new Adjacency( start, Arrays.copyOf( list, n ) );
+    }
+
+    /**
+     * The neighbours of every cell of a board, in compressed sparse row
+     * form: the neighbours of {@code cell} are
+     * {@code neighbours[start[cell]]} to
+     * {@code neighbours[start[cell + 1] - 1]}.
+     */
+    static final class Adjacency {
+
+        final int[] start;
+        final int[] neighbours;
+
+        Adjacency( int[] start, int[] neighbours ) {
+            this.start = start;
+            this.neighbours = neighbours;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2023, lcu
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package es.lcssl.games.ms;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ResourceBundle;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Ring buffer of the last {@link #CAPACITY} game events, for
+ * diagnostics. Recording an event stores its type, two numbers and the
+ * time (from {@link System#nanoTime()}) in a preallocated array, so it
+ * allocates nothing and formats nothing: the events are only turned into
+ * text when the buffer is dumped to a file, on demand (see
+ * {@link #dump()}) or when a thread dies of an uncaught exception (see
+ * {@link #dumpOnCrash()}). Older events are overwritten by newer ones.
+ *
+ * <p>
+ * This class is thread safe, recording never blocks.
+ *
+ * @author lcu
+ */
+final class Trace {
+
+    private static final Logger LOG
+            = Logger.getLogger( Trace.class.getName() );
+
+    private static final ResourceBundle INTL
+            = ResourceBundle.getBundle( Trace.class.getName() );
+
+    /**
+     * The number of events kept, a power of two.
+     */
+    public static final int CAPACITY = 1 << 14;
+
+    /**
+     * The events recorded. The meaning of the two numbers of each event
+     * is in its description, in the properties of this class.
+     */
+    enum Event {
+        /**
+         * New game: mines, nanoseconds to place them.
+         */
+        INIT,
+        /**
+         * Cell pushed: row, column.
+         */
+        PUSH,
+        /**
+         * Cell pushed after the end of the game: row, column.
+         */
+        ALREADY_FINISHED,
+        /**
+         * Cell pushed already uncovered: row, column.
+         */
+        ALREADY_OPENED,
+        /**
+         * Flag switched: row, column.
+         */
+        FLAG,
+        /**
+         * Mine uncovered: row, column.
+         */
+        EXPLODED,
+        /**
+         * Last cell uncovered: row, column.
+         */
+        WON,
+        /**
+         * End of the cascade of a click: cells, nanoseconds.
+         */
+        CASCADE,
+        /**
+         * Chronograph reset: identity, milliseconds shown.
+         */
+        CHRONO_RESET,
+        /**
+         * Chronograph started: identity, milliseconds shown.
+         */
+        CHRONO_START,
+        /**
+         * Chronograph started twice: identity, milliseconds shown.
+         */
+        CHRONO_ALREADY_STARTED,
+        /**
+         * Chronograph stopped: identity, milliseconds shown.
+         */
+        CHRONO_STOP,
+        /**
+         * Chronograph display refreshed: identity, milliseconds shown.
+         */
+        CHRONO_TICK,
+        /**
+         * Chronograph thread interrupted: identity, milliseconds shown.
+         */
+        CHRONO_INTERRUPTED,
+        /**
+         * Score file read: lines and bytes read so far.
+         */
+        SCORES_READ,
+        /**
+         * Hall of fame loaded: scores, nanoseconds.
+         */
+        SCORES_LOADED,
+        /**
+         * Score added: position, score in milliseconds.
+         */
+        SCORE_ADDED,
+        /**
+         * Event dispatch thread stalled: operation, nanoseconds.
+         */
+        STALL
+    }
+
+    /* each event takes SLOT longs: the stamp (its sequence number plus
+     * one, zero while being written), the time, the type and first
+     * number, and the second number */
+    private static final int SLOT = 4;
+    private static final int MASK = CAPACITY - 1;
+    private static final Event[] EVENTS = Event.values();
+
+    private static final AtomicLong next = new AtomicLong();
+    private static final AtomicLongArray buffer
+            = new AtomicLongArray( CAPACITY * SLOT );
+
+    private Trace() {
+    }
+
+    /**
+     * Records an event.
+     *
+     * @param event the type of the event.
+     * @param a     its first number.
+     * @param b     its second number.
+     */
+    static void record( Event event, int a, long b ) {
+        long seq = next.getAndIncrement();
+        int slot = (int) (seq & MASK) * SLOT;
+        buffer.set( slot, 0 );
+        buffer.lazySet( slot + 1, System.nanoTime() );
+        buffer.lazySet( slot + 2,
+                        (long) event.ordinal() << 32 | (a & 0xffffffffL) );
+        buffer.lazySet( slot + 3, b );
+        buffer.set( slot, seq + 1 );
+    }
+
+    /**
+     * Writes the events in the buffer to a file, oldest first, with
+     * their time relative to the moment of the dump. Events being
+     * recorded while dumping may be missing.
+     *
+     * @param file the file to write.
+     * @throws IOException if the file cannot be written.
+     */
+    static void dump( File file ) throws IOException {
+        long now = System.nanoTime(),
+                last = next.get(),
+                first = Math.max( 0, last - CAPACITY );
+        try ( PrintWriter out = new PrintWriter( Files.newBufferedWriter(
+                file.toPath(), StandardCharsets.UTF_8 ) ) ) {
+            out.println( format( INTL.getString( "HEADER" ),
+                                 last - first, last ) );
+            for ( long seq = first; seq < last; seq++ ) {
+                int slot = (int) (seq & MASK) * SLOT;
+                long when = buffer.get( slot + 1 ),
+                        what = buffer.get( slot + 2 ),
+                        b = buffer.get( slot + 3 );
+                if ( buffer.get( slot ) != seq + 1 ) {
+                    /* not written yet, or already overwritten */
+                    continue;
+                }
+                Event event = EVENTS[ (int) (what >>> 32) ];
+                out.println( format( INTL.getString( "LINE" ),
+                                     (when - now) / 1e6,
+                                     event,
+                                     format( INTL.getString(
+                                             event.name() ),
+                                             (int) what,
+                                             b ) ) );
+            }
+        }
+    }
+
+    /**
+     * Writes the events in the buffer to a new temporary file.
+     *
+     * @return the file written.
+     * @throws IOException if the file cannot be written.
+     */
+    static File dump() throws IOException {
+        File file = Files.createTempFile( "ms-trace-", ".txt" ).toFile();
+        dump( file );
+        LOG.info( () -> format( INTL.getString( "DUMPED" ), file ) );
+        return file;
+    }
+
+    /**
+     * Makes any thread dying of an uncaught exception dump the buffer
+     * first, then go on as it would have gone (or log the exception, if
+     * there was no default handler).
+     */
+    static void dumpOnCrash() {
+        Thread.UncaughtExceptionHandler previous
+                = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler( ( t, ex ) -> {
+            try {
+                dump();
+            } catch ( IOException | RuntimeException dump_ex ) {
+                LOG.log( Level.WARNING, dump_ex, () -> format(
+                         INTL.getString( "CANNOT_DUMP" ), dump_ex ) );
+            }
+            if ( previous != null ) {
+                previous.uncaughtException( t, ex );
+            } else {
+                /* the thread group would call us again */
+                LOG.log( Level.SEVERE, ex, () -> format(
+                         INTL.getString( "CRASHED" ), t.getName() ) );
+            }
+        } );
+    }
+}
@@ -51,8 +51,12 @@ public class ValueField extends JLabel implements PropertyChangeListener {
     }
 
 
+    public void setValue( Object value ) {
+        setText( format( format, value ) );
+    }
+
     @Override
     public void propertyChange( PropertyChangeEvent evt ) {
-        setText( format( format, evt.getNewValue() ) );
+        setValue( evt.getNewValue() );
     }
 }
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2023, lcu
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package es.lcssl.games.ms;
+
+import java.awt.EventQueue;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * A snapshot only holds what the player sees of the board.
+ *
+ * @author lcu
+ */
+public class BoardSnapshotTest {
+
+    @BeforeClass
+    public static void headless() {
+        System.setProperty( "java.awt.headless", "true" );
+    }
+
+    private static void assertHidesMines( BoardSnapshot snapshot ) {
+        for ( int i = 0; i < snapshot.size(); i++ ) {
+            byte cell = snapshot.cellAt( i );
+            assertEquals( "cell " + i, 0, cell & MineSweeper.MINE );
+            if ( (cell & MineSweeper.ALREADY_OPENED) == 0 ) {
+                assertEquals( "cell " + i, 0,
+                              cell & MineSweeper.MINES_MASK );
+            }
+        }
+    }
+
+    @Test
+    public void minesAreNotCopied() throws Exception {
+        EventQueue.invokeAndWait( () -> {
+            MineSweeper board = new MineSweeper( 20, 30, 0.3 );
+            assertHidesMines( board.snapshot() );
+            /* and the chunks copied again after some moves */
+            int[] moves = new int[100];
+            byte[] actions = new byte[moves.length];
+            for ( int k = 0; k < moves.length; k++ ) {
+                moves[k] = k * 6;
+                actions[k] = (board.cellAt( moves[k] / 30, moves[k] % 30 )
+                              & MineSweeper.MINE) != 0
+                        ? MineSweeper.MOVE_FLAG
+                        : MineSweeper.MOVE_OPEN;
+            }
+            board.apply( moves, actions );
+            assertHidesMines( board.snapshot() );
+        } );
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2023, lcu
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package es.lcssl.games.ms;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Ranks count the scores not held in memory exactly.
+ *
+ * @author lcu
+ */
+public class HallOfFameModelTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void headless() {
+        System.setProperty( "java.awt.headless", "true" );
+    }
+
+    /**
+     * Checks the ranks of times between scores {@code 100_000} to
+     * {@code 100_019}, one millisecond apart, much closer than the
+     * buckets of the statistics.
+     */
+    private static void assertRanks( HallOfFameModel model ) {
+        assertEquals( 20, model.getTotalSize() );
+        assertEquals( 1, model.getRank( 99_999 ) );
+        for ( int i = 0; i < 20; i++ ) {
+            assertEquals( "time " + (100_000 + i),
+                          i + 1, model.getRank( 100_000 + i ) );
+        }
+        assertEquals( 21, model.getRank( 100_020 ) );
+        assertEquals( 50.0, model.getPercentile( 100_010 ), 0.0 );
+    }
+
+    @Test
+    public void droppedScoresAreCountedExactly() throws Exception {
+        HallOfFameModel model = new HallOfFameModel(
+                9, 9, 10, folder.getRoot(), 3, n -> {
+                } );
+        /* the best first, so the rest are dropped as they come */
+        for ( int i = 0; i < 20; i++ ) {
+            HallOfFameModel.Score added = model.addScore( "p", i, 100_000 + i );
+            assertEquals( "time " + (100_000 + i), i + 1,
+                          added.getPosition() );
+        }
+        assertEquals( 3, model.getSize() );
+        assertRanks( model );
+
+        /* and when loaded from the files */
+        assertRanks( new HallOfFameModel(
+                9, 9, 10, folder.getRoot(), 3, n -> {
+                } ) );
+    }
+}
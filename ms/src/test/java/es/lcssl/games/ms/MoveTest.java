@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2023, lcu
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package es.lcssl.games.ms;
+
+import java.awt.EventQueue;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The actions of the moves applied in batches.
+ *
+ * @author lcu
+ */
+public class MoveTest {
+
+    private static final int ROWS = 12, COLS = 9;
+
+    @BeforeClass
+    public static void headless() {
+        System.setProperty( "java.awt.headless", "true" );
+    }
+
+    private static int first( MineSweeper board, boolean mine ) {
+        int cell = 0;
+        while ( ((board.cellAt( cell / COLS, cell % COLS )
+                  & MineSweeper.MINE) != 0) != mine ) {
+            cell++;
+        }
+        return cell;
+    }
+
+    @Test
+    public void openKeepsFlags() throws Exception {
+        EventQueue.invokeAndWait( () -> {
+            MineSweeper board = new MineSweeper( ROWS, COLS, 0.2 );
+            int mine = first( board, true ),
+                    safe = first( board, false ),
+                    mines_to_mark = board.getMinesToMark();
+            board.apply( new int[] { mine, safe },
+                         new byte[] { MineSweeper.MOVE_FLAG,
+                                      MineSweeper.MOVE_FLAG } );
+            MineSweeper.MoveResult result = board.apply(
+                    new int[] { mine, safe },
+                    new byte[] { MineSweeper.MOVE_OPEN,
+                                 MineSweeper.MOVE_OPEN } );
+            BoardSnapshot snapshot = board.snapshot();
+            assertTrue( snapshot.isFlagged( mine / COLS, mine % COLS ) );
+            assertTrue( snapshot.isFlagged( safe / COLS, safe % COLS ) );
+            assertFalse( snapshot.isOpened( safe / COLS, safe % COLS ) );
+            assertFalse( result.isLost() );
+            assertEquals( 0, result.getOpened().length );
+            assertEquals( mines_to_mark - 2, board.getMinesToMark() );
+        } );
+    }
+
+    @Test
+    public void openThenChordInOneBatch() throws Exception {
+        EventQueue.invokeAndWait( () -> {
+            MineSweeper board = new MineSweeper( ROWS, COLS, 0.2 );
+            int safe = first( board, false );
+            /* the chord is decided after the open uncovers the cell, and
+             * the second open does nothing */
+            MineSweeper.MoveResult result = board.apply(
+                    new int[] { safe, safe, safe },
+                    new byte[] { MineSweeper.MOVE_OPEN,
+                                 MineSweeper.MOVE_CHORD,
+                                 MineSweeper.MOVE_OPEN } );
+            assertEquals( 3, result.getApplied() );
+            assertTrue( board.snapshot().isOpened( safe / COLS,
+                                                   safe % COLS ) );
+            assertFalse( result.isLost() );
+        } );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void unknownAction() {
+        MineSweeper board = new MineSweeper( ROWS, COLS, 0.2 );
+        board.apply( new int[] { 0 }, new byte[] { 4 } );
+    }
+}
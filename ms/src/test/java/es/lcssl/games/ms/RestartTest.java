@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2023, lcu
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package es.lcssl.games.ms;
+
+import java.awt.EventQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Restarting a game many times, as {@link Main} does, must neither pile
+ * up listeners nor grow the memory held by the board, and must leave a
+ * right board. The board is played in the event dispatch thread, as
+ * Swing wants.
+ *
+ * @author lcu
+ */
+public class RestartTest {
+
+    private static final int ROWS = 100, COLS = 100;
+    private static final int RESTARTS = 5000;
+
+    /**
+     * Growth of the used heap we tolerate, much less than a board's worth
+     * of cells per restart.
+     */
+    private static final long MAX_GROWTH = 1 << 20;
+
+    @BeforeClass
+    public static void headless() {
+        System.setProperty( "java.awt.headless", "true" );
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for ( int i = 0; i < 4; i++ ) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    /**
+     * Restarts the game like the menu does, clicking a cell every other
+     * time so the chronograph starts, and the rest before the first
+     * click.
+     */
+    private static void restart( MineSweeper board,
+            Main.ChronoStartListener chrono_start, int i ) {
+        board.init();
+        chrono_start.arm();
+        if ( i % 2 == 0 ) {
+            board.apply( new int[] { i % (ROWS * COLS) },
+                         new byte[] { MineSweeper.MOVE_UNCOVER } );
+        }
+    }
+
+    @Test
+    public void listenersDoNotPileUp() throws Exception {
+        EventQueue.invokeAndWait( RestartTest::restartsWithListeners );
+    }
+
+    private static void restartsWithListeners() {
+        MineSweeper board = new MineSweeper( ROWS, COLS, 0.15 );
+        int n_mines = MineSweeper.minesFor( ROWS, COLS, 0.15 );
+        AtomicInteger started = new AtomicInteger();
+        Main.ChronoStartListener chrono_start = new Main.ChronoStartListener(
+                board, started::incrementAndGet );
+        int cells_to_go = board.getListenerCount(
+                MineSweeper.PROPERTY_CELLS_TO_GO ),
+                mines = board.getListenerCount( MineSweeper.PROPERTY_MINES );
+        for ( int i = 0; i < RESTARTS; i++ ) {
+            restart( board, chrono_start, i );
+            assertTrue( board.getListenerCount(
+                    MineSweeper.PROPERTY_CELLS_TO_GO ) <= cells_to_go + 1 );
+        }
+        /* and the board is still a right one */
+        assertBoard( board, n_mines );
+        assertOpened( board );
+        /* once more: the restart doesn't start the chronograph, the
+         * first click starts it exactly once */
+        started.set( 0 );
+        board.init();
+        chrono_start.arm();
+        board.init();
+        assertEquals( 0, started.get() );
+        int safe = 0;
+        while ( (board.cellAt( safe / COLS, safe % COLS )
+                 & MineSweeper.MINE) != 0 ) {
+            safe++;
+        }
+        board.apply( new int[] { safe + 1 },
+                     new byte[] { MineSweeper.MOVE_FLAG } );
+        assertEquals( 0, started.get() );
+        assertEquals( cells_to_go + 1, board.getListenerCount(
+                      MineSweeper.PROPERTY_CELLS_TO_GO ) );
+        board.apply( new int[] { safe },
+                     new byte[] { MineSweeper.MOVE_UNCOVER } );
+        assertEquals( 1, started.get() );
+        assertEquals( cells_to_go, board.getListenerCount(
+                      MineSweeper.PROPERTY_CELLS_TO_GO ) );
+        assertEquals( mines, board.getListenerCount(
+                      MineSweeper.PROPERTY_MINES ) );
+        assertOpened( board );
+    }
+
+    /**
+     * Checks that the count shown by every cell opened is the number of
+     * mines placed around it.
+     */
+    static void assertOpened( MineSweeper board ) {
+        BoardSnapshot snapshot = board.snapshot();
+        int rows = board.getRows(), cols = board.getCols();
+        int[] out_r = new int[Topology.MAX_NEIGHBOURS],
+                out_c = new int[Topology.MAX_NEIGHBOURS];
+        for ( int r = 0; r < rows; r++ ) {
+            for ( int c = 0; c < cols; c++ ) {
+                if ( !snapshot.isOpened( r, c ) ) {
+                    continue;
+                }
+                int around = 0;
+                for ( int i = 0, n = snapshot.neighbours(
+                        r, c, out_r, out_c ); i < n; i++ ) {
+                    if ( (board.cellAt( out_r[i], out_c[i] )
+                            & MineSweeper.MINE) != 0 ) {
+                        around++;
+                    }
+                }
+                assertEquals( "(" + r + ", " + c + ")", around,
+                              snapshot.getMines( r, c ) );
+            }
+        }
+    }
+
+    /**
+     * Checks the border around the board is intact, the board has
+     * {@code mines} mines, and the count of every cell is the number of
+     * mines around it.
+     */
+    static void assertBoard( MineSweeper board, int mines ) {
+        int rows = board.getRows(), cols = board.getCols(), found = 0;
+        int[] out_r = new int[Topology.MAX_NEIGHBOURS],
+                out_c = new int[Topology.MAX_NEIGHBOURS];
+        for ( int r = -1; r <= rows; r++ ) {
+            for ( int c = -1; c <= cols; c++ ) {
+                String where = board.getTopology()
+                        + " (" + r + ", " + c + ")";
+                byte value = board.cellAt( r, c );
+                if ( r < 0 || r == rows || c < 0 || c == cols ) {
+                    assertEquals( where, MineSweeper.ALREADY_OPENED, value );
+                    continue;
+                }
+                if ( (value & MineSweeper.MINE) != 0 ) {
+                    found++;
+                }
+                int around = 0;
+                for ( int i = 0, n = board.getTopology().neighbours(
+                        r, c, rows, cols, out_r, out_c ); i < n; i++ ) {
+                    if ( (board.cellAt( out_r[i], out_c[i] )
+                            & MineSweeper.MINE) != 0 ) {
+                        around++;
+                    }
+                }
+                assertEquals( where, around,
+                              value & MineSweeper.MINES_MASK );
+            }
+        }
+        assertEquals( board.getTopology().toString(), mines, found );
+    }
+
+    /**
+     * Plays a bit without losing: flags some mines and opens some safe
+     * cells.
+     */
+    private static void play( MineSweeper board, int i ) {
+        int n = board.getRows() * board.getCols();
+        int[] moves = new int[n / 4];
+        byte[] actions = new byte[moves.length];
+        for ( int k = 0; k < moves.length; k++ ) {
+            int move = (i * 7 + k * 13) % n;
+            moves[k] = move;
+            actions[k] = (board.cellAt( move / board.getCols(),
+                                        move % board.getCols() )
+                          & MineSweeper.MINE) != 0
+                    ? MineSweeper.MOVE_FLAG
+                    : MineSweeper.MOVE_OPEN;
+        }
+        board.apply( moves, actions );
+    }
+
+    @Test
+    public void boardSurvivesRestarts() throws Exception {
+        for ( Topology topology : Topology.values() ) {
+            EventQueue.invokeAndWait( () -> {
+                MineSweeper board = new MineSweeper( 12, 9, 0.2, topology );
+                int mines = MineSweeper.minesFor( 12, 9, 0.2 );
+                for ( int i = 0; i < RESTARTS / 10; i++ ) {
+                    board.init();
+                    assertBoard( board, mines );
+                    play( board, i );
+                    assertBoard( board, mines );
+                }
+            } );
+        }
+    }
+
+    @Test
+    public void heapStaysFlat() throws Exception {
+        MineSweeper[] board = new MineSweeper[1];
+        Main.ChronoStartListener[] chrono_start
+                = new Main.ChronoStartListener[1];
+        /* warm up, so the lazily built state is there before measuring */
+        EventQueue.invokeAndWait( () -> {
+            board[0] = new MineSweeper( ROWS, COLS, 0.15 );
+            chrono_start[0] = new Main.ChronoStartListener(
+                    board[0], () -> { } );
+            for ( int i = 0; i < RESTARTS / 10; i++ ) {
+                restart( board[0], chrono_start[0], i );
+            }
+        } );
+        long before = usedHeap();
+        EventQueue.invokeAndWait( () -> {
+            for ( int i = 0; i < RESTARTS; i++ ) {
+                restart( board[0], chrono_start[0], i );
+            }
+            assertBoard( board[0], MineSweeper.minesFor( ROWS, COLS, 0.15 ) );
+        } );
+        long growth = usedHeap() - before;
+        assertTrue( "heap grew " + growth + " bytes", growth < MAX_GROWTH );
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2023, lcu
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package es.lcssl.games.ms;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The neighbours of every cell, in every topology, are cells of the
+ * board: never the border around it.
+ *
+ * @author lcu
+ */
+public class TopologyTest {
+
+    private static final int[][] SIZES = {
+        { 1, 1 }, { 1, 5 }, { 2, 2 }, { 3, 4 }, { 10, 7 } };
+
+    @BeforeClass
+    public static void headless() {
+        System.setProperty( "java.awt.headless", "true" );
+    }
+
+    @Test
+    public void adjacencyIsInBoard() {
+        for ( Topology topology : Topology.values() ) {
+            for ( int[] size : SIZES ) {
+                int rows = size[0], cols = size[1], width = cols + 2;
+                Topology.Adjacency adjacency = topology.adjacency(
+                        rows, cols, (rows + 2) * width,
+                        ( r, c ) -> (r + 1) * width + c + 1 );
+                for ( int cell = 0; cell < (rows + 2) * width; cell++ ) {
+                    int r = cell / width - 1, c = cell % width - 1;
+                    boolean in_board = r >= 0 && r < rows
+                            && c >= 0 && c < cols;
+                    for ( int k = adjacency.start[cell];
+                            k < adjacency.start[cell + 1]; k++ ) {
+                        int neighbour = adjacency.neighbours[k],
+                                nr = neighbour / width - 1,
+                                nc = neighbour % width - 1;
+                        String where = topology + " " + rows + "x" + cols
+                                + " (" + r + ", " + c + ") -> (" + nr
+                                + ", " + nc + ")";
+                        assertTrue( where, in_board );
+                        assertTrue( where, nr >= 0 && nr < rows
+                                    && nc >= 0 && nc < cols );
+                        assertNotEquals( where, cell, neighbour );
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void snapshotNeighboursAreInBoard() {
+        int[] out_r = new int[Topology.MAX_NEIGHBOURS],
+                out_c = new int[Topology.MAX_NEIGHBOURS];
+        for ( Topology topology : Topology.values() ) {
+            BoardSnapshot snapshot
+                    = new MineSweeper( 10, 7, 0.1, topology ).snapshot();
+            for ( int r = 0; r < 10; r++ ) {
+                for ( int c = 0; c < 7; c++ ) {
+                    int n = snapshot.neighbours( r, c, out_r, out_c );
+                    for ( int i = 0; i < n; i++ ) {
+                        assertTrue( topology + " (" + r + ", " + c + ")",
+                                    out_r[i] >= 0 && out_r[i] < 10
+                                    && out_c[i] >= 0 && out_c[i] < 7 );
+                        /* and the snapshot accepts them */
+                        snapshot.isOpened( out_r[i], out_c[i] );
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void neighbourCounts() {
+        int[] out_r = new int[Topology.MAX_NEIGHBOURS],
+                out_c = new int[Topology.MAX_NEIGHBOURS];
+        assertEquals( 3, Topology.SQUARE.neighbours(
+                      0, 0, 10, 7, out_r, out_c ) );
+        assertEquals( 5, Topology.SQUARE.neighbours(
+                      0, 3, 10, 7, out_r, out_c ) );
+        assertEquals( 8, Topology.SQUARE.neighbours(
+                      5, 3, 10, 7, out_r, out_c ) );
+        assertEquals( 8, Topology.TORUS.neighbours(
+                      0, 0, 10, 7, out_r, out_c ) );
+        assertEquals( 6, Topology.HEX.neighbours(
+                      5, 3, 10, 7, out_r, out_c ) );
+        assertEquals( 2, Topology.HEX.neighbours(
+                      0, 0, 10, 7, out_r, out_c ) );
+    }
+}